@@ -35,6 +35,7 @@ public class Banzai {
     /** enable logging for this class */
     private static Category log = Category.getInstance(Banzai.class.getName());
     private Initiator initiator = null;
+    private BanzaiApplication application = null;
     private JFrame frame = null;
     private static boolean stop = false;
 
@@ -51,10 +52,11 @@ public class Banzai {
         OrderTableModel orderTableModel = new OrderTableModel();
         ExecutionTableModel executionTableModel = new ExecutionTableModel();
 
-        BanzaiApplication application =
-            new BanzaiApplication(orderTableModel, executionTableModel);
         SessionSettings settings =
             new SessionSettings(new FileInputStream("cfg/banzai.cfg"));
+        application =
+            new BanzaiApplication(orderTableModel, executionTableModel,
+                                  settings);
         MessageStoreFactory messageStoreFactory =
             new FileStoreFactory(settings);
         LogFactory logFactory =
@@ -68,6 +70,12 @@ public class Banzai {
         frame = new BanzaiFrame(orderTableModel, executionTableModel,
                                 application);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                application.stop();
+            }
+        });
     }
 
     public void start() throws Exception {
@@ -77,6 +85,7 @@ public class Banzai {
     public void stop() {
 		stop = true;
 		initiator.stop();
+		application.stop();
 	}
 
     public JFrame getFrame() {
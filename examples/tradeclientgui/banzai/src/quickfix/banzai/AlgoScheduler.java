@@ -0,0 +1,299 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import quickfix.SessionID;
+
+/**
+ *  Works a parent order as a schedule of child orders.
+ *
+ *  A TWAP parent is split into equal slices over its duration; a VWAP
+ *  parent follows a volume profile, one weight per slice.  At each
+ *  slice the scheduler sends whatever the parent is behind its target
+ *  by, counting what has filled and what children still have working,
+ *  so fills and failed children feed back into later slices.
+ *
+ *  The parent is never sent itself.  Children do not get rows of their
+ *  own; their fills are rolled up into the parent's row.  Slices are
+ *  timed by a TimerWheel shared by every parent, and a child that
+ *  finds its session's outbound queue full fails rather than holding
+ *  up the wheel; the next slice makes up for it.
+ */
+public class AlgoScheduler {
+    public final static long DEFAULT_TICK_MILLIS = 10;
+
+    private BanzaiApplication application;
+    private TimerWheel wheel;
+    private ConcurrentHashMap algos = new ConcurrentHashMap();
+    private ConcurrentHashMap children = new ConcurrentHashMap();
+    private ConcurrentHashMap childIDs = new ConcurrentHashMap();
+
+    public AlgoScheduler(BanzaiApplication application) {
+        this.application = application;
+        this.wheel = new TimerWheel(DEFAULT_TICK_MILLIS);
+        wheel.start();
+    }
+
+    public void stop() {
+        wheel.stop();
+    }
+
+    /**
+     *  Works the parent in equal slices over the duration.
+     */
+    public void twap(Order parent, long durationMillis, int slices) {
+        double[] profile = new double[Math.max(1, slices)];
+        for(int i = 0; i < profile.length; ++i)
+            profile[i] = 1;
+        vwap(parent, durationMillis, profile);
+    }
+
+    /**
+     *  Works the parent in slices of equal length over the duration,
+     *  each slice's share of the quantity in proportion to its weight
+     *  in the volume profile.
+     */
+    public void vwap(Order parent, long durationMillis, double[] profile) {
+        if(profile.length == 0)
+            throw new IllegalArgumentException("Volume profile is empty");
+        double total = 0;
+        for(int i = 0; i < profile.length; ++i)
+            total += profile[i];
+        if(!(total > 0))
+            throw new IllegalArgumentException("Volume profile has no volume");
+
+        int quantity = parent.getQuantity();
+        int[] targets = new int[profile.length];
+        double cumulative = 0;
+        for(int i = 0; i < profile.length; ++i) {
+            cumulative += profile[i];
+            targets[i] = (int)Math.round(quantity * cumulative / total);
+        }
+        targets[targets.length - 1] = quantity;
+
+        Algo algo = new Algo(parent, targets,
+                             durationMillis / profile.length);
+        if(algos.putIfAbsent(parent, algo) != null)
+            throw new IllegalArgumentException("Order is already scheduled");
+        parent.setOpen(quantity);
+        algo.run();
+    }
+
+    /**
+     *  Stops sending slices and cancels the children still working.
+     */
+    public void cancel(Order parent) {
+        Algo algo = (Algo)algos.get(parent);
+        if(algo != null)
+            algo.cancel();
+    }
+
+    /**
+     *  Cancels every parent of the session, narrowed to a symbol and
+     *  side when they are given.
+     */
+    public void cancel(SessionID sessionID, String symbol, OrderSide side) {
+        Iterator i = algos.keySet().iterator();
+        while(i.hasNext()) {
+            Order parent = (Order)i.next();
+            if(sessionID.equals(parent.getSessionID())
+                    && (symbol == null || symbol.equals(parent.getSymbol()))
+                    && (side == null || side == parent.getSide()))
+                cancel(parent);
+        }
+    }
+
+    public boolean isScheduled(Order parent) {
+        return algos.containsKey(parent);
+    }
+
+    /**
+     *  @return the parent of a child order, or null
+     */
+    public Order getParent(Order child) {
+        Algo algo = (Algo)children.get(child);
+        return algo == null ? null : algo.parent;
+    }
+
+    /**
+     *  @return the child order known by a ClOrdID, or null
+     */
+    public Order getChild(String id) {
+        return (Order)childIDs.get(id);
+    }
+
+    /**
+     *  Makes a child reachable under another ClOrdID, such as the one of
+     *  its cancel.
+     *
+     *  @return false if the order is not a child
+     */
+    public boolean addID(Order child, String id) {
+        if(!children.containsKey(child))
+            return false;
+        childIDs.put(id, child);
+        return true;
+    }
+
+    /**
+     *  Rolls a child's latest state up into its parent.
+     *
+     *  @param done whether the child has finished
+     *  @return the parent
+     */
+    public Order childUpdated(Order child, boolean done) {
+        Algo algo = (Algo)children.get(child);
+        if(algo == null)
+            return null;
+        if(child.getMessage() != null)
+            algo.parent.setMessage(child.getMessage());
+        algo.rollUp();
+        if(done)
+            algo.childDone(child);
+        return algo.parent;
+    }
+
+    private class Algo implements Runnable {
+        private Order parent;
+        private int[] targets;
+        private long intervalMillis;
+        private int slice = 0;
+        private boolean canceled = false;
+        private TimerWheel.Timeout timeout = null;
+        private ArrayList all = new ArrayList();
+        private ArrayList working = new ArrayList();
+
+        Algo(Order parent, int[] targets, long intervalMillis) {
+            this.parent = parent;
+            this.targets = targets;
+            this.intervalMillis = intervalMillis;
+        }
+
+        public void run() {
+            Order child;
+            synchronized(this) {
+                timeout = null;
+                if(canceled || slice == targets.length)
+                    return;
+                int behind = targets[slice] - committed();
+                slice++;
+                if(slice < targets.length)
+                    timeout = wheel.schedule(this, intervalMillis);
+                if(behind <= 0)
+                    return;
+                child = newChild(behind);
+                all.add(child);
+                working.add(child);
+                children.put(child, this);
+                childIDs.put(child.getID(), child);
+            }
+            try {
+                application.send(child, null, false);
+            } catch(IllegalArgumentException e) {
+                parent.setMessage(e.getMessage());
+                childDone(child);
+            }
+        }
+
+        // filled plus still working
+        private int committed() {
+            int committed = 0;
+            for(int i = 0; i < all.size(); ++i)
+                committed += ((Order)all.get(i)).getExecuted();
+            for(int i = 0; i < working.size(); ++i) {
+                Order child = (Order)working.get(i);
+                committed += Math.max(0, child.getQuantity()
+                                      - child.getExecuted());
+            }
+            return committed;
+        }
+
+        private Order newChild(int quantity) {
+            Order child = new Order();
+            child.setSessionID(parent.getSessionID());
+            child.setSymbol(parent.getSymbol());
+            child.setSide(parent.getSide());
+            child.setType(parent.getType());
+            child.setTIF(parent.getTIF());
+            child.setLimit(parent.getLimit());
+            child.setStop(parent.getStop());
+            child.setQuantity(quantity);
+            return child;
+        }
+
+        void cancel() {
+            ArrayList cancels;
+            synchronized(this) {
+                canceled = true;
+                if(timeout != null)
+                    timeout.cancel();
+                timeout = null;
+                cancels = new ArrayList(working);
+            }
+            for(int i = 0; i < cancels.size(); ++i)
+                application.cancel((Order)cancels.get(i));
+            finishIfDone();
+        }
+
+        synchronized void rollUp() {
+            int executed = 0;
+            double notional = 0;
+            for(int i = 0; i < all.size(); ++i) {
+                Order child = (Order)all.get(i);
+                executed += child.getExecuted();
+                notional += child.getExecuted() * child.getAvgPx();
+            }
+            parent.setExecuted(executed);
+            if(executed > 0)
+                parent.setAvgPx(notional / executed);
+            parent.setOpen(canceled ? committed() - executed
+                           : parent.getQuantity() - executed);
+        }
+
+        void childDone(Order child) {
+            synchronized(this) {
+                working.remove(child);
+            }
+            children.remove(child);
+            // once under each ClOrdID it was given, such as its cancel's
+            while(childIDs.values().remove(child));
+            finishIfDone();
+        }
+
+        private void finishIfDone() {
+            synchronized(this) {
+                if(!working.isEmpty() || (!canceled && slice < targets.length))
+                    return;
+                int executed = parent.getExecuted();
+                if(canceled)
+                    parent.setCanceled(true);
+                else if(executed < parent.getQuantity())
+                    parent.setMessage("Schedule ended "
+                                      + (parent.getQuantity() - executed)
+                                      + " short");
+                parent.setOpen(0);
+            }
+            algos.remove(parent);
+            application.algoUpdated(parent);
+        }
+    }
+}
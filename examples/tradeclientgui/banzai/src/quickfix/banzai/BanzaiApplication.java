@@ -19,36 +19,224 @@
 
 package quickfix.banzai;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import quickfix.*;
 import quickfix.banzai.Order;
 import quickfix.field.*;
-import javax.swing.SwingUtilities;
 
 public class BanzaiApplication implements Application {
+    public final static String INBOUND_THREADS = "InboundThreads";
+
     private OrderTableModel orderTableModel = null;
     private ExecutionTableModel executionTableModel = null;
     private ObservableOrder observableOrder = new ObservableOrder();
     private ObservableLogon observableLogon = new ObservableLogon();
+    private OrderStateEngine orderStateEngine = null;
     static private TwoWayMap sideMap = new TwoWayMap();
     static private TwoWayMap typeMap = new TwoWayMap();
     static private TwoWayMap tifMap = new TwoWayMap();
-    static private HashMap execIDs = new HashMap();
+    static private OrderSide[] fixSides = new OrderSide[128];
+    private ExecIDStore execIDs = null;
+    private MessageRouter router = new MessageRouter();
+    private OutboundQueue outbound = null;
+    private RiskChecker risk = null;
+    private OpenOrderIndex openOrders = new OpenOrderIndex();
+    private HashMap massCancels = new HashMap();
+    private PendingRequests pending = new PendingRequests();
+    private AlgoScheduler algos = null;
+    private OrderEncoder[] encoders = new OrderEncoder[6];
+    private volatile IdentityHashMap encodersByIdentity = new IdentityHashMap();
+    private volatile HashMap encodersByEquality = new HashMap();
 
     public BanzaiApplication(OrderTableModel orderTableModel,
                              ExecutionTableModel executionTableModel) {
+        this(orderTableModel, executionTableModel, null);
+    }
+
+    public BanzaiApplication(OrderTableModel orderTableModel,
+                             ExecutionTableModel executionTableModel,
+                             SessionSettings settings) {
         this.orderTableModel = orderTableModel;
         this.executionTableModel = executionTableModel;
+        execIDs = new ExecIDStore(settings);
+        outbound = new OutboundQueue(settings);
+        risk = new RiskChecker(settings);
+        MessageTemplates templates = new MessageTemplates(settings);
+        for(int i = 0; i < encoders.length; ++i)
+            encoders[i] = new OrderEncoder(this, templates, i);
+        Order.setIDGenerator(createIDGenerator(settings));
+        algos = new AlgoScheduler(this);
+        recoverOrders(settings);
+        registerHandlers();
+        configureBlotter(settings);
+        orderStateEngine = new OrderStateEngine
+                           (orderTableModel, executionTableModel,
+                            observableOrder, getRefreshRate(settings),
+                            getInboundThreads(settings));
+        orderStateEngine.start();
+    }
+
+    /**
+     *  InboundThreads in the default section sets the number of workers
+     *  applying inbound messages.  Defaults to the number of processors,
+     *  up to four.
+     */
+    private static int getInboundThreads(SessionSettings settings) {
+        return (int)new BanzaiSettings(settings).getLong
+               (null, INBOUND_THREADS,
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     *  TableRefreshRate in the default section bounds how many times a
+     *  second the OrderStateEngine flushes changes to the order and
+     *  execution tables.
+     */
+    private static int getRefreshRate(SessionSettings settings) {
+        return (int)Math.max(1, new BanzaiSettings(settings).getLong
+                             (null, CoalescingTableModel.REFRESH_RATE,
+                              CoalescingTableModel.DEFAULT_REFRESH_RATE));
+    }
+
+    /**
+     *  ExecutionBlotterSize in the default section bounds the executions
+     *  kept in memory.  Older ones are spilled beside the message store
+     *  when there is a FileStorePath, or to a temporary file.
+     */
+    private void configureBlotter(SessionSettings settings) {
+        BanzaiSettings banzaiSettings = new BanzaiSettings(settings);
+        executionTableModel.setCapacity((int)banzaiSettings.getLong
+                                        (null, ExecutionTableModel.BLOTTER_SIZE,
+                                         ExecutionTableModel.DEFAULT_CAPACITY));
+        String path = banzaiSettings.getString
+                      (null, ExecIDStore.FILE_STORE_PATH, null);
+        if(path != null)
+            executionTableModel.setSpillFile
+            (new File(path, ExecutionTableModel.SPILL_FILE));
+    }
+
+    /**
+     *  Keeps the ClOrdID sequence beside the message store when the
+     *  default section names a FileStorePath.
+     */
+    private static OrderIDGenerator createIDGenerator(SessionSettings settings) {
+        BanzaiSettings banzaiSettings = new BanzaiSettings(settings);
+        String path = banzaiSettings.getString
+                      (null, ExecIDStore.FILE_STORE_PATH, null);
+        File file = path == null ? null
+                    : new File(path, ClOrdIDGenerator.SEQUENCE_FILE);
+        return new ClOrdIDGenerator(banzaiSettings, file,
+                                    ClOrdIDGenerator.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     *  Keeps order state in an OrderStateStore beside the message store
+     *  when the default section sets OrderStateStore=Y, and restores
+     *  the orders it already holds.  Open ones are reserved again with
+     *  the RiskChecker.
+     */
+    private void recoverOrders(SessionSettings settings) {
+        BanzaiSettings banzaiSettings = new BanzaiSettings(settings);
+        String path = banzaiSettings.getString
+                      (null, ExecIDStore.FILE_STORE_PATH, null);
+        if(path == null
+                || !banzaiSettings.getBool(null, OrderStateStore.STORE, false))
+            return;
+        int capacity = (int)banzaiSettings.getLong
+                       (null, OrderStateStore.STORE_CAPACITY,
+                        OrderStateStore.DEFAULT_CAPACITY);
+        try {
+            OrderStateStore store = new OrderStateStore
+                                    (new File(path, OrderStateStore.STATE_FILE),
+                                     capacity);
+            List orders = store.recover();
+            for(int i = 0; i < orders.size(); ++i) {
+                Order order = (Order)orders.get(i);
+                orderTableModel.addOrder(order);
+                risk.recover(order);
+                if(!isDone(order))
+                    openOrders.add(order);
+            }
+            orderTableModel.setStateStore(store);
+        } catch(IOException e) {
+            System.out.println(e);
+        }
     }
 
-    public void onCreate(SessionID sessionID) {}
+    private void registerHandlers() {
+        router.register(null, MsgType.EXECUTION_REPORT,
+        new MessageRouter.Handler() {
+            public void handle(Message message, SessionID sessionID)
+            throws FieldNotFound {
+                executionReport(message, sessionID);
+            }
+        });
+        router.register(null, MsgType.ORDER_CANCEL_REJECT,
+        new MessageRouter.Handler() {
+            public void handle(Message message, SessionID sessionID)
+            throws FieldNotFound {
+                cancelReject(message, sessionID);
+            }
+        });
+
+        // BusinessMessageReject arrived with FIX.4.2
+        MessageRouter.Handler businessMessageReject =
+        new MessageRouter.Handler() {
+            public void handle(Message message, SessionID sessionID)
+            throws FieldNotFound {
+                businessMessageReject(message, sessionID);
+            }
+        };
+        String[] beginStrings = { "FIX.4.2", "FIX.4.3", "FIX.4.4", "FIXT.1.1" };
+        for(int i = 0; i < beginStrings.length; ++i) {
+            router.register(beginStrings[i], MsgType.BUSINESS_MESSAGE_REJECT,
+                            businessMessageReject);
+        }
+
+        // and OrderMassCancelReport with FIX.4.3
+        MessageRouter.Handler massCancelReport = new MessageRouter.Handler() {
+            public void handle(Message message, SessionID sessionID)
+            throws FieldNotFound {
+                massCancelReport(message, sessionID);
+            }
+        };
+        for(int i = 1; i < beginStrings.length; ++i) {
+            router.register(beginStrings[i], MsgType.ORDER_MASS_CANCEL_REPORT,
+                            massCancelReport);
+        }
+    }
+
+    public MessageRouter getRouter() {
+        return router;
+    }
+
+    public void stop() {
+        algos.stop();
+        outbound.stop();
+        orderStateEngine.stop();
+        execIDs.close();
+        executionTableModel.close();
+    }
+
+    public void onCreate(SessionID sessionID) {
+        bindEncoder(sessionID);
+    }
     public void onLogon(SessionID sessionID) {
+        bindEncoder(sessionID);
         observableLogon.logon(sessionID);
     }
     public void onLogout(SessionID sessionID) {
@@ -56,10 +244,23 @@ public class BanzaiApplication implements Application {
     }
 
     public void toAdmin(quickfix.Message message,
-                        SessionID sessionID) {}
+                        SessionID sessionID) {
+        outbound.charge(sessionID);
+    }
 
+    /**
+     *  Resent application messages go around the outbound queue, so
+     *  like session level messages they are charged to its bucket.
+     */
     public void toApp(quickfix.Message message,
-                      SessionID sessionID) throws DoNotSend {}
+                      SessionID sessionID) throws DoNotSend {
+        quickfix.Message.Header header = message.getHeader();
+        try {
+            if(header.isSetField(PossDupFlag.FIELD)
+                    && header.getField(new PossDupFlag()).getValue())
+                outbound.charge(sessionID);
+        } catch(FieldNotFound e) {}
+    }
 
     public void fromAdmin(quickfix.Message message,SessionID sessionID)
     throws FieldNotFound, IncorrectDataFormat, IncorrectTagValue, RejectLogon {}
@@ -67,7 +268,8 @@ public class BanzaiApplication implements Application {
     public void fromApp(quickfix.Message message, SessionID sessionID)
     throws FieldNotFound, IncorrectDataFormat, IncorrectTagValue, UnsupportedMessageType {
         try {
-            SwingUtilities.invokeLater(new doFromApp(message, sessionID));
+            orderStateEngine.submit(sessionID,
+                                    new doFromApp(message, sessionID));
         } catch(Exception e) {}
     }
 
@@ -82,11 +284,7 @@ public class BanzaiApplication implements Application {
 
         public void run() {
             try {
-                MsgType msgType = new MsgType();
-                if(message.getHeader().getField(msgType).valueEquals("8"))
-                    executionReport(message, sessionID);
-                if(message.getHeader().getField(msgType).valueEquals("9"))
-                    cancelReject(message, sessionID);
+                router.route(message, sessionID);
             } catch(FieldNotFound e) {
                 System.out.println(e);
             }
@@ -96,77 +294,86 @@ public class BanzaiApplication implements Application {
     private void executionReport(Message message, SessionID sessionID)
     throws FieldNotFound {
 
-        ExecID execID = (ExecID)message.getField(new ExecID());
-        if(alreadyProcessed(execID, sessionID))
+        ExecutionReportView report = ExecutionReportDecoder.get().decode(message);
+        if(execIDs.alreadyProcessed(report.execID, sessionID))
             return;
 
-        String id = message.getField(new ClOrdID()).getValue();
-        Order order = orderTableModel.getOrder(id);
+        String id = report.clOrdID;
+        Order order = findOrder(id);
         if(order == null)
             return;
 
-        LastShares lastShares = new LastShares(0);
+        int lastShares = (int)report.lastShares;
 
-        try {
-            OrderQty orderQty = (OrderQty)message.getField(new OrderQty());
-            int diff = order.getQuantity() - (int)orderQty.getValue();
-            order.setQuantity((int)orderQty.getValue());
+        if(report.hasOrderQty) {
+            int diff = order.getQuantity() - (int)report.orderQty;
+            order.setQuantity((int)report.orderQty);
             order.setOpen(order.getOpen() - diff);
-        } catch(FieldNotFound e) {}
-        try {
-            Price price = (Price)message.getField(new Price());
-            order.setLimit(new Double(price.getValue()));
-        } catch(FieldNotFound e) {}
-        try {
-            message.getField(lastShares);
-        } catch(FieldNotFound e) {}
+        }
+        if(report.hasPrice) {
+            Double limit = order.getLimit();
+            if(limit == null || limit.doubleValue() != report.price)
+                order.setLimit(new Double(report.price));
+        }
 
-        if(lastShares.getValue() > 0) {
-            order.setExecuted((int)message.getField(new CumQty()).getValue());
-            order.setAvgPx(message.getField(new AvgPx()).getValue());
+        if(report.isFill()) {
+            if(report.hasCumQty)
+                order.setExecuted((int)report.cumQty);
+            if(report.hasAvgPx)
+                order.setAvgPx(report.avgPx);
         }
-        OrdStatus ordStatus = (OrdStatus)message.getField(new OrdStatus());
+        char ordStatus = report.ordStatus;
 
-        try {
-            order.setOpen((int)message.getField(new LeavesQty()).getValue());
-        } catch(FieldNotFound e) {
+        if(report.hasLeavesQty) {
+            order.setOpen((int)report.leavesQty);
+        } else {
             // FIX40 doesn't have LeavesQty
-            if(ordStatus.valueEquals(OrdStatus.REJECTED) ||
-                    ordStatus.valueEquals(OrdStatus.CANCELED))
+            if(ordStatus == OrdStatus.REJECTED ||
+                    ordStatus == OrdStatus.CANCELED)
                 order.setOpen(0);
-            else if(ordStatus.valueEquals(OrdStatus.NEW)) {
+            else if(ordStatus == OrdStatus.NEW) {
                 if(order.isNew()) {
                     order.setOpen(order.getQuantity());
                     order.setNew(false);
                 }
             }
-            order.setOpen(order.getOpen() - (int)lastShares.getValue());
+            order.setOpen(order.getOpen() - lastShares);
         }
 
-        if(ordStatus.valueEquals(OrdStatus.REJECTED))
+        if(ordStatus == OrdStatus.REJECTED)
             order.setRejected(true);
-        else if(ordStatus.valueEquals(OrdStatus.CANCELED) ||
-                ordStatus.valueEquals(OrdStatus.DONE_FOR_DAY))
+        else if(ordStatus == OrdStatus.CANCELED ||
+                ordStatus == OrdStatus.DONE_FOR_DAY)
             order.setCanceled(true);
 
-        try {
-            order.setMessage(message.getField(new Text()).getValue());
-        } catch(FieldNotFound e) {
-            order.setMessage(null);
+        order.setMessage(report.text);
+
+        // a cancel or replace acknowledged under its own ClOrdID becomes
+        // the ID the next request refers to; its row already knows it
+        if(!id.equals(order.getID()))
+            order.setID(id);
+
+        risk.orderUpdated(order, report.isFill() ? lastShares : 0,
+                          report.hasLastPx ? report.lastPx : Double.NaN);
+        if(isDone(order)) {
+            openOrders.remove(order);
+            pending.done(order);
+            orderTableModel.retire(order);
+        } else if(ordStatus != OrdStatus.PENDING_CANCEL
+                  && ordStatus != OrdStatus.PENDING_REPLACE) {
+            sendNext(order, pending.answered
+                     (order, id, ordStatus != OrdStatus.REJECTED));
         }
+        orderUpdated(order, id);
 
-        orderTableModel.updateOrder(order, id);
-        observableOrder.update(order);
-
-        if(lastShares.getValue() > 0) {
+        if(report.isFill()) {
             Execution execution = new Execution();
-            execution.setExchangeID(sessionID + message.getField(new ExecID()).getValue());
-            execution.setSymbol(message.getField(new Symbol()).getValue());
-            execution.setQuantity((int)lastShares.getValue());
-            execution.setPrice(message.getField(new LastPx()).getValue());
-            Side side = (Side)message.getField(new Side());
-            execution.setSide(FIXSideToSide(side));
-            executionTableModel.addExecution(execution);
+            execution.setExchangeID(sessionID + report.execID);
+            execution.setSymbol(report.symbol);
+            execution.setQuantity(lastShares);
+            execution.setPrice(report.lastPx);
+            execution.setSide(FIXSideToSide(report.side));
+            orderStateEngine.executionAdded(execution);
         }
     }
 
@@ -174,391 +381,481 @@ public class BanzaiApplication implements Application {
     throws FieldNotFound {
 
         String id = message.getField(new ClOrdID()).getValue();
-        Order order = orderTableModel.getOrder(id);
+        // every ID of a chain leads to the order that started it
+        Order order = findOrder(id);
         if(order == null)
             return;
-        if(order.getOriginalID() != null)
-            order = orderTableModel.getOrder(order.getOriginalID());
 
-        try {
+        if(message.isSetField(Text.FIELD))
             order.setMessage(message.getField(new Text()).getValue());
-        } catch(FieldNotFound e) {}
-        orderTableModel.updateOrder(order, order.getID());
+        orderUpdated(order, order.getID());
+        sendNext(order, pending.answered(order, id, false));
     }
 
-    private boolean alreadyProcessed(ExecID execID, SessionID sessionID) {
-        HashSet set = (HashSet)execIDs.get(sessionID);
-        if(set == null) {
-            set = new HashSet();
-            set.add(execID);
-            execIDs.put(sessionID, set);
-            return false;
-        } else {
-            if(set.contains(execID))
-                return true;
-            set.add(execID);
-            return false;
+    private void businessMessageReject(Message message, SessionID sessionID)
+    throws FieldNotFound {
+
+        if(!message.isSetField(BusinessRejectRefID.FIELD))
+            return;
+        String id = message.getField(new BusinessRejectRefID()).getValue();
+        // every ID of a chain leads to the order that started it
+        Order order = findOrder(id);
+        if(order == null)
+            return;
+
+        if(message.isSetField(RefMsgType.FIELD)
+                && message.getField(new RefMsgType()).valueEquals
+                (MsgType.ORDER_SINGLE)) {
+            order.setRejected(true);
+            order.setOpen(0);
+            risk.orderUpdated(order, 0, Double.NaN);
+            openOrders.remove(order);
+            pending.done(order);
+            orderTableModel.retire(order);
         }
+        if(message.isSetField(Text.FIELD))
+            order.setMessage(message.getField(new Text()).getValue());
+        orderUpdated(order, order.getID());
     }
 
-    private void send(quickfix.Message message, SessionID sessionID) {
-        try {
-            Session.sendToTarget(message, sessionID);
-        } catch(SessionNotFound e) {
-            System.out.println(e);
+    private void massCancelReport(Message message, SessionID sessionID)
+    throws FieldNotFound {
+
+        if(!message.isSetField(ClOrdID.FIELD))
+            return;
+        MassCancel massCancel;
+        synchronized(massCancels) {
+            massCancel = (MassCancel)massCancels.remove
+                         (message.getString(ClOrdID.FIELD));
         }
+        if(massCancel != null
+                && message.isSetField(MassCancelResponse.FIELD)
+                && message.getChar(MassCancelResponse.FIELD)
+                == MassCancelResponse.CANCEL_REQUEST_REJECTED)
+            massCancel.cancelEach();
     }
 
-    public void send(Order order) throws IllegalArgumentException {
-        String beginString = order.getSessionID().getBeginString();
-        if(beginString.equals("FIX.4.0"))
-            send40(order);
-        else if(beginString.equals("FIX.4.1"))
-            send41(order);
-        else if(beginString.equals("FIX.4.2"))
-            send42(order);
-        else if(beginString.equals("FIX.4.3"))
-            send43(order);
-        else if(beginString.equals("FIX.4.4"))
-            send44(order);
-        else if(beginString.equals("FIXT.1.1"))
-            send50(order);
+    // children of scheduled orders have no rows of their own
+    private Order findOrder(String id) {
+        Order order = orderTableModel.getOrder(id);
+        return order == null ? algos.getChild(id) : order;
+    }
+
+    private void addID(Order order, String id) {
+        if(!algos.addID(order, id))
+            orderTableModel.addID(order, id);
+    }
+
+    private void orderUpdated(Order order, String id) {
+        Order parent = algos.childUpdated(order, isDone(order));
+        if(parent == null)
+            orderStateEngine.orderUpdated(order, id);
         else
-        {
-          throw new IllegalArgumentException("Unsupported BeginString '"
-              + beginString + "' in order");
+            orderStateEngine.orderUpdated(parent, parent.getID());
+    }
+
+    /**
+     *  Called by the AlgoScheduler when a parent order changes outside
+     *  of an inbound message.
+     */
+    void algoUpdated(Order parent) {
+        orderStateEngine.orderUpdated(parent, parent.getID());
+    }
+
+    private static boolean isDone(Order order) {
+        return order.getRejected() || order.getCanceled()
+               || order.getExecuted() >= order.getQuantity();
+    }
+
+    /**
+     *  Orders and cancels are only queued here; the session's sender
+     *  thread sends them.  Orders and replaces must first pass the
+     *  RiskChecker's limits.  An order that cannot be sent is marked
+     *  rejected with the reason, and a cancel or replace that cannot be
+     *  sent leaves the reason as the order's message.
+     */
+    public void send(Order order) throws IllegalArgumentException {
+        send(order, null);
+    }
+
+    /**
+     *  @param callback told once the order is sent or has failed, from
+     *  the session's sender thread; may be null
+     */
+    public void send(Order order, OutboundQueue.Callback callback)
+    throws IllegalArgumentException {
+        send(order, callback, true);
+    }
+
+    /**
+     *  @param wait false to fail the order rather than wait for room
+     *  in a full queue, as the AlgoScheduler's timer thread must
+     */
+    void send(Order order, OutboundQueue.Callback callback, boolean wait)
+    throws IllegalArgumentException {
+        quickfix.Message message = newOrderSingle(order);
+        OrderCallback orderCallback = new OrderCallback(order, true, callback);
+        String reason = risk.checkNew(order);
+        if(reason != null) {
+            orderCallback.failed(order.getSessionID(), message, reason);
+            return;
         }
-        
-        return;
-    }
-
-    public void send40(Order order) {
-        quickfix.fix40.NewOrderSingle newOrderSingle =
-            new quickfix.fix40.NewOrderSingle
-            (new ClOrdID(order.getID()),
-             new HandlInst('1'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             new OrderQty(order.getQuantity()),
-             typeToFIXType(order.getType()));
-
-        send(populateOrder(order, newOrderSingle), order.getSessionID());
-    }
-
-    public void send41(Order order) {
-        quickfix.fix41.NewOrderSingle newOrderSingle =
-            new quickfix.fix41.NewOrderSingle
-            (new ClOrdID(order.getID()),
-             new HandlInst('1'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             typeToFIXType(order.getType()));
-        newOrderSingle.set(new OrderQty(order.getQuantity()));
-
-        send(populateOrder(order, newOrderSingle), order.getSessionID());
-    }
-
-    public void send42(Order order) {
-        quickfix.fix42.NewOrderSingle newOrderSingle =
-            new quickfix.fix42.NewOrderSingle
-            (new ClOrdID(order.getID()),
-             new HandlInst('1'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        newOrderSingle.set(new OrderQty(order.getQuantity()));
-
-        send(populateOrder(order, newOrderSingle), order.getSessionID());
-    }
-
-    public void send43(Order order) {
-        quickfix.fix43.NewOrderSingle newOrderSingle =
-            new quickfix.fix43.NewOrderSingle
-            (new ClOrdID(order.getID()),
-             new HandlInst('1'),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        newOrderSingle.set(new OrderQty(order.getQuantity()));
-        newOrderSingle.set(new Symbol(order.getSymbol()));
-
-        send(populateOrder(order, newOrderSingle), order.getSessionID());
-    }
-
-    public void send44(Order order) {
-        quickfix.fix44.NewOrderSingle newOrderSingle =
-            new quickfix.fix44.NewOrderSingle
-            (new ClOrdID(order.getID()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        newOrderSingle.set(new OrderQty(order.getQuantity()));
-        newOrderSingle.set(new HandlInst('1'));
-        newOrderSingle.set(new Symbol(order.getSymbol()));
-
-        send(populateOrder(order, newOrderSingle), order.getSessionID());
-    }   
-    
-    public void send50(Order order) {
-        quickfix.fix50.NewOrderSingle newOrderSingle =
-            new quickfix.fix50.NewOrderSingle
-            (new ClOrdID(order.getID()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        newOrderSingle.set(new OrderQty(order.getQuantity()));
-        newOrderSingle.set(new HandlInst('1'));
-        newOrderSingle.set(new Symbol(order.getSymbol()));
-
-        send(populateOrder(order, newOrderSingle), order.getSessionID());
-    }   
-
-    public quickfix.Message populateOrder
-    (Order order, quickfix.Message newOrderSingle) {
-
-        OrderType type = order.getType();
-
-        if(type == OrderType.LIMIT)
-            newOrderSingle.setField(new Price(order.getLimit().doubleValue()));
-        else if(type == OrderType.STOP)
-            newOrderSingle.setField(new StopPx(order.getStop().doubleValue()));
-        else if(type == OrderType.STOP_LIMIT) {
-            newOrderSingle.setField(new Price(order.getLimit().doubleValue()));
-            newOrderSingle.setField(new StopPx(order.getStop().doubleValue()));
-        }
-
-        newOrderSingle.setField(tifToFIXTif(order.getTIF()))
-        ;
-        return newOrderSingle;
-    }
-
-    public void cancel(Order order) {
-        String beginString = order.getSessionID().getBeginString();
-        if(beginString.equals("FIX.4.0"))
-            cancel40(order);
-        else if(beginString.equals("FIX.4.1"))
-            cancel41(order);
-        else if(beginString.equals("FIX.4.2"))
-            cancel42(order);
-        else if(beginString.equals("FIX.4.3"))
-            cancel42(order);
-        else if(beginString.equals("FIX.4.4"))
-            cancel42(order);
-        else if(beginString.equals("FIXT.1.1"))
-            cancel42(order);
-        return;
+        openOrders.add(order);
+        outbound.offer(order.getSessionID(), message, orderCallback, wait);
+    }
+
+    public quickfix.Message newOrderSingle(Order order)
+    throws IllegalArgumentException {
+        return getEncoder(order.getSessionID()).newOrderSingle(order);
+    }
+
+    /**
+     *  Sends a basket of orders.  Every message is built before any is
+     *  queued, and each session's orders are handed to the outbound
+     *  queue in one call.  Returns once they are queued; the result
+     *  records whether each order was sent, and why not, as the sender
+     *  threads get to them.  Safe to call on the Swing thread, where a
+     *  full queue fails orders rather than waiting.
+     */
+    public BatchResult sendBatch(Collection orders) {
+        BatchResult result = new BatchResult(orders.size());
+        LinkedHashMap groups = new LinkedHashMap();
+        Iterator i = orders.iterator();
+        while(i.hasNext()) {
+            Order order = (Order)i.next();
+            SessionID sessionID = order.getSessionID();
+            if(sessionID == null) {
+                result.failed(order, "No session");
+                continue;
+            }
+            try {
+                quickfix.Message message = newOrderSingle(order);
+                String reason = risk.checkNew(order);
+                if(reason != null) {
+                    order.setRejected(true);
+                    order.setMessage(reason);
+                    orderStateEngine.orderUpdated(order, order.getID());
+                    result.failed(order, reason);
+                    continue;
+                }
+                openOrders.add(order);
+                ArrayList group = (ArrayList)groups.get(sessionID);
+                if(group == null) {
+                    group = new ArrayList();
+                    groups.put(sessionID, group);
+                }
+                group.add(order);
+                group.add(message);
+            } catch(RuntimeException e) {
+                result.failed(order, e.getMessage());
+            }
+        }
+
+        i = groups.entrySet().iterator();
+        while(i.hasNext()) {
+            Map.Entry entry = (Map.Entry)i.next();
+            SessionID sessionID = (SessionID)entry.getKey();
+            ArrayList group = (ArrayList)entry.getValue();
+            // group holds each order followed by its message
+            int size = group.size() / 2;
+            quickfix.Message[] messages = new quickfix.Message[size];
+            OutboundQueue.Callback[] callbacks =
+                new OutboundQueue.Callback[size];
+            for(int j = 0; j < size; ++j) {
+                Order order = (Order)group.get(2 * j);
+                messages[j] = (quickfix.Message)group.get(2 * j + 1);
+                callbacks[j] = new OrderCallback
+                               (order, true, new BatchCallback(order, result));
+            }
+            outbound.offerAll(sessionID, messages, callbacks);
+        }
+        return result;
     }
 
-    public void cancel40(Order order) {
+    public void cancel(Order order) throws IllegalArgumentException {
+        cancel(order, null);
+    }
+
+    /**
+     *  A parent order worked by the AlgoScheduler is never sent, so its
+     *  cancel stops the schedule and cancels the children still
+     *  working; the callback is told it was sent at once.
+     */
+    public void cancel(Order order, OutboundQueue.Callback callback)
+    throws IllegalArgumentException {
+        if(algos.isScheduled(order)) {
+            algos.cancel(order);
+            if(callback != null)
+                callback.sent(order.getSessionID(), null);
+            return;
+        }
+        OrderEncoder encoder = getEncoder(order.getSessionID());
+        if(!pending.beginCancel(order)) {
+            if(callback != null)
+                callback.failed(order.getSessionID(), null,
+                                "Cancel already pending");
+            return;
+        }
         String id = order.generateID();
-        quickfix.fix40.OrderCancelRequest message =
-            new quickfix.fix40.OrderCancelRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(id),
-             new CxlType('F'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             new OrderQty(order.getQuantity()));
+        pending.setCancelID(order, id);
+        quickfix.Message message = encoder.orderCancelRequest(order, id);
+
+        addID(order, id);
+        outbound.offer(order.getSessionID(), message,
+                       new OrderCallback(order, false, callback, id));
+    }
+
+    public void replace(Order order, Order newOrder)
+    throws IllegalArgumentException {
+        replace(order, newOrder, null);
+    }
+
+    /**
+     *  Only one replace of an order is in flight at a time.  Replaces
+     *  made meanwhile are held back, only the latest is kept, and it is
+     *  sent once the one in flight is answered.  Replaces of an order
+     *  with a cancel pending are dropped, as are replaces of a parent
+     *  order worked by the AlgoScheduler.
+     */
+    public void replace(Order order, Order newOrder,
+                        OutboundQueue.Callback callback)
+    throws IllegalArgumentException {
+        if(algos.isScheduled(order)) {
+            String reason = "Scheduled orders cannot be replaced";
+            order.setMessage(reason);
+            algoUpdated(order);
+            if(callback != null)
+                callback.failed(order.getSessionID(), null, reason);
+            return;
+        }
+        getEncoder(order.getSessionID());
+        int action = pending.beginReplace(order, newOrder, callback);
+        if(action == PendingRequests.SUPPRESSED) {
+            if(callback != null)
+                callback.failed(order.getSessionID(), null,
+                                "Cancel pending");
+            return;
+        }
+        if(action == PendingRequests.SEND)
+            sendReplace(order, order.getID(), newOrder, callback);
+    }
+
+    private void sendNext(Order order, PendingRequests.Replace next) {
+        if(next != null)
+            sendReplace(order, next.origID, next.newOrder, next.callback);
+    }
+
+    private void sendReplace(Order order, String origID, Order newOrder,
+                             OutboundQueue.Callback callback) {
+        quickfix.Message message = getEncoder(order.getSessionID())
+                                   .orderCancelReplaceRequest
+                                   (order, origID, newOrder);
+        OrderCallback orderCallback = new OrderCallback
+                                      (order, false, callback,
+                                       newOrder.getID());
+        String reason = risk.checkReplace(order, newOrder);
+        if(reason != null) {
+            orderCallback.failed(order.getSessionID(), message, reason);
+            return;
+        }
+
+        addID(order, newOrder.getID());
+        outbound.offer(order.getSessionID(), message, orderCallback);
+    }
+
+    /**
+     *  Cancels the session's open orders, narrowed to a symbol and side
+     *  when they are given.  From FIX.4.3 this is one
+     *  OrderMassCancelRequest; should the counterparty reject it, or on
+     *  older versions, every open order is sent its own cancel in one
+     *  burst through the outbound queue.  Matching parent orders worked
+     *  by the AlgoScheduler stop sending slices first.
+     *
+     *  @param symbol null for every symbol
+     *  @param side null for both sides
+     */
+    public void massCancel(SessionID sessionID, String symbol, OrderSide side)
+    throws IllegalArgumentException {
+        OrderEncoder encoder = getEncoder(sessionID);
+        algos.cancel(sessionID, symbol, side);
+        MassCancel massCancel = new MassCancel(sessionID, symbol, side);
+        String id = Order.getIDGenerator().nextID(sessionID);
+        quickfix.Message message = encoder.orderMassCancelRequest
+                                   (sessionID, id, symbol, side);
+        if(message == null) {
+            massCancel.cancelEach();
+            return;
+        }
+        synchronized(massCancels) {
+            massCancels.put(id, massCancel);
+        }
+        outbound.offer(sessionID, message, massCancel);
+    }
 
-        orderTableModel.addID(order, id);
-        send(message, order.getSessionID());
+    public OpenOrderIndex getOpenOrders() {
+        return openOrders;
     }
 
-    public void cancel41(Order order) {
-        String id = order.generateID();
-        quickfix.fix41.OrderCancelRequest message =
-            new quickfix.fix41.OrderCancelRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(id),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()));
-        message.setField(new OrderQty(order.getQuantity()));
+    private class MassCancel implements OutboundQueue.Callback {
+        private SessionID sessionID;
+        private String symbol;
+        private OrderSide side;
+
+        MassCancel(SessionID sessionID, String symbol, OrderSide side) {
+            this.sessionID = sessionID;
+            this.symbol = symbol;
+            this.side = side;
+        }
+
+        void cancelEach() {
+            List orders = openOrders.getOrders(sessionID, symbol, side);
+            for(int i = 0; i < orders.size(); ++i)
+                cancel((Order)orders.get(i));
+        }
+
+        public void sent(SessionID sessionID, quickfix.Message message) {}
 
-        orderTableModel.addID(order, id);
-        send(message, order.getSessionID());
+        public void failed(SessionID sessionID, quickfix.Message message,
+                           String reason) {
+            boolean pending;
+            synchronized(massCancels) {
+                pending = massCancels.values().remove(this);
+            }
+            if(pending)
+                cancelEach();
+        }
     }
 
-    public void cancel42(Order order) {
-        String id = order.generateID();
-        quickfix.fix42.OrderCancelRequest message =
-            new quickfix.fix42.OrderCancelRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(id),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime());
-        message.setField(new OrderQty(order.getQuantity()));
-
-        orderTableModel.addID(order, id);
-        send(message, order.getSessionID());
-    }
-     
-    public void cancel43(Order order) {
-        String id = order.generateID();
-        quickfix.fix43.OrderCancelRequest message =
-            new quickfix.fix43.OrderCancelRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(id),
-             sideToFIXSide(order.getSide()),
-             new TransactTime());
-        message.setField(new OrderQty(order.getQuantity()));
-        message.setField(new Symbol(order.getSymbol()));
-
-        orderTableModel.addID(order, id);
-        send(message, order.getSessionID());
-    }   
-    
-    public void cancel44(Order order) {
-        String id = order.generateID();
-        quickfix.fix44.OrderCancelRequest message =
-            new quickfix.fix44.OrderCancelRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(id),
-             sideToFIXSide(order.getSide()),
-             new TransactTime());
-        message.setField(new OrderQty(order.getQuantity()));
-        message.setField(new Symbol(order.getSymbol()));
+    public OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
 
-        orderTableModel.addID(order, id);
-        send(message, order.getSessionID());
+    public RiskChecker getRiskChecker() {
+        return risk;
     }
 
-    public void cancel50(Order order) {
-        String id = order.generateID();
-        quickfix.fix50.OrderCancelRequest message =
-            new quickfix.fix50.OrderCancelRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(id),
-             sideToFIXSide(order.getSide()),
-             new TransactTime());
-        message.setField(new OrderQty(order.getQuantity()));
-        message.setField(new Symbol(order.getSymbol()));
-
-        orderTableModel.addID(order, id);
-        send(message, order.getSessionID());
-    }
-    
-    public void replace(Order order, Order newOrder) {
-        String beginString = order.getSessionID().getBeginString();
+    public AlgoScheduler getAlgoScheduler() {
+        return algos;
+    }
+
+    private class OrderCallback implements OutboundQueue.Callback {
+        private Order order;
+        private boolean rejectOnFailure;
+        private OutboundQueue.Callback callback;
+        private String pendingID;
+
+        OrderCallback(Order order, boolean rejectOnFailure,
+                      OutboundQueue.Callback callback) {
+            this(order, rejectOnFailure, callback, null);
+        }
+
+        /**
+         *  @param pendingID ClOrdID of the cancel or replace, resolved
+         *  in PendingRequests should it fail
+         */
+        OrderCallback(Order order, boolean rejectOnFailure,
+                      OutboundQueue.Callback callback, String pendingID) {
+            this.order = order;
+            this.rejectOnFailure = rejectOnFailure;
+            this.callback = callback;
+            this.pendingID = pendingID;
+        }
+
+        public void sent(SessionID sessionID, quickfix.Message message) {
+            if(callback != null)
+                callback.sent(sessionID, message);
+        }
+
+        public void failed(SessionID sessionID, quickfix.Message message,
+                           String reason) {
+            if(rejectOnFailure) {
+                order.setRejected(true);
+                risk.release(order);
+                openOrders.remove(order);
+                orderTableModel.retire(order);
+            }
+            order.setMessage(reason);
+            orderUpdated(order, order.getID());
+            if(callback != null)
+                callback.failed(sessionID, message, reason);
+            if(pendingID != null)
+                sendNext(order, pending.answered(order, pendingID, false));
+        }
+    }
+
+    private static class BatchCallback implements OutboundQueue.Callback {
+        private Order order;
+        private BatchResult result;
+
+        BatchCallback(Order order, BatchResult result) {
+            this.order = order;
+            this.result = result;
+        }
+
+        public void sent(SessionID sessionID, quickfix.Message message) {
+            result.sent(order);
+        }
+
+        public void failed(SessionID sessionID, quickfix.Message message,
+                           String reason) {
+            result.failed(order, reason);
+        }
+    }
+
+    /**
+     *  Binds the session to the encoder of its FIX version.  The
+     *  session is found by identity first, as the SessionID handed to
+     *  onCreate and onLogon is usually the one orders carry, and by
+     *  equality otherwise.
+     */
+    private void bindEncoder(SessionID sessionID) {
+        OrderEncoder encoder = encoderFor(sessionID.getBeginString());
+        if(encoder == null)
+            return;
+        synchronized(encoders) {
+            IdentityHashMap byIdentity =
+                new IdentityHashMap(encodersByIdentity);
+            byIdentity.put(sessionID, encoder);
+            HashMap byEquality = new HashMap(encodersByEquality);
+            byEquality.put(sessionID, encoder);
+            encodersByEquality = byEquality;
+            encodersByIdentity = byIdentity;
+        }
+    }
+
+    public OrderEncoder getEncoder(SessionID sessionID)
+    throws IllegalArgumentException {
+        OrderEncoder encoder = (OrderEncoder)encodersByIdentity.get(sessionID);
+        if(encoder != null)
+            return encoder;
+        encoder = (OrderEncoder)encodersByEquality.get(sessionID);
+        if(encoder != null)
+            return encoder;
+
+        // a session that has not been bound yet
+        String beginString = sessionID.getBeginString();
+        if(encoderFor(beginString) == null) {
+          throw new IllegalArgumentException("Unsupported BeginString '"
+              + beginString + "' in order");
+        }
+        bindEncoder(sessionID);
+        return encoderFor(beginString);
+    }
+
+    private OrderEncoder encoderFor(String beginString) {
         if(beginString.equals("FIX.4.0"))
-            replace40(order, newOrder);
+            return encoders[MessageTemplates.FIX40];
         else if(beginString.equals("FIX.4.1"))
-            replace41(order, newOrder);
+            return encoders[MessageTemplates.FIX41];
         else if(beginString.equals("FIX.4.2"))
-            replace42(order, newOrder);
+            return encoders[MessageTemplates.FIX42];
         else if(beginString.equals("FIX.4.3"))
-            replace42(order, newOrder);
+            return encoders[MessageTemplates.FIX43];
         else if(beginString.equals("FIX.4.4"))
-            replace42(order, newOrder);
+            return encoders[MessageTemplates.FIX44];
         else if(beginString.equals("FIXT.1.1"))
-            replace42(order, newOrder);
-        return;
-    }
-
-    public void replace40(Order order, Order newOrder) {
-        quickfix.fix40.OrderCancelReplaceRequest message =
-            new quickfix.fix40.OrderCancelReplaceRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(newOrder.getID()),
-             new HandlInst('1'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             new OrderQty(newOrder.getQuantity()),
-             typeToFIXType(order.getType()));
-
-        orderTableModel.addID(order, newOrder.getID());
-        send(populateCancelReplace(order, newOrder,
-                                   message), order.getSessionID());
-    }
-
-    public void replace41(Order order, Order newOrder) {
-        quickfix.fix41.OrderCancelReplaceRequest message =
-            new quickfix.fix41.OrderCancelReplaceRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(newOrder.getID()),
-             new HandlInst('1'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             typeToFIXType(order.getType()));
-
-        orderTableModel.addID(order, newOrder.getID());
-        send(populateCancelReplace(order, newOrder,
-                                   message), order.getSessionID());
-    }
-
-    public void replace42(Order order, Order newOrder) {
-        quickfix.fix42.OrderCancelReplaceRequest message =
-            new quickfix.fix42.OrderCancelReplaceRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(newOrder.getID()),
-             new HandlInst('1'),
-             new Symbol(order.getSymbol()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-
-        orderTableModel.addID(order, newOrder.getID());
-        send(populateCancelReplace(order, newOrder,
-                                   message), order.getSessionID());
-    }
-
-    public void replace43(Order order, Order newOrder) {
-        quickfix.fix43.OrderCancelReplaceRequest message =
-            new quickfix.fix43.OrderCancelReplaceRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(newOrder.getID()),
-             new HandlInst('1'),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        message.setField(new Symbol(order.getSymbol()));
-
-        orderTableModel.addID(order, newOrder.getID());
-        send(populateCancelReplace(order, newOrder,
-                                   message), order.getSessionID());
-    }
-    
-    public void replace44(Order order, Order newOrder) {
-        quickfix.fix44.OrderCancelReplaceRequest message =
-            new quickfix.fix44.OrderCancelReplaceRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(newOrder.getID()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        message.setField(new Symbol(order.getSymbol()));
-        message.setField(new HandlInst('1'));
-
-        orderTableModel.addID(order, newOrder.getID());
-        send(populateCancelReplace(order, newOrder,
-                                   message), order.getSessionID());
-    }
-
-    public void replace50(Order order, Order newOrder) {
-        quickfix.fix50.OrderCancelReplaceRequest message =
-            new quickfix.fix50.OrderCancelReplaceRequest
-            (new OrigClOrdID(order.getID()),
-             new ClOrdID(newOrder.getID()),
-             sideToFIXSide(order.getSide()),
-             new TransactTime(),
-             typeToFIXType(order.getType()));
-        message.setField(new Symbol(order.getSymbol()));
-        message.setField(new HandlInst('1'));
-
-        orderTableModel.addID(order, newOrder.getID());
-        send(populateCancelReplace(order, newOrder,
-                                   message), order.getSessionID());
-    }
-    
-    Message populateCancelReplace(Order order, Order newOrder,
-                                  quickfix.Message message) {
-
-        if(order.getQuantity() != newOrder.getQuantity())
-            message.setField(new OrderQty(newOrder.getQuantity()));
-        if(order.getLimit() != newOrder.getLimit())
-            message.setField(new Price(newOrder.getLimit().doubleValue()));
-        return message;
+            return encoders[MessageTemplates.FIX50];
+        return null;
     }
 
     public  Side sideToFIXSide(OrderSide side) {
@@ -567,6 +864,9 @@ public class BanzaiApplication implements Application {
     public  OrderSide FIXSideToSide(Side side) {
         return (OrderSide)sideMap.getSecond(side);
     }
+    public  OrderSide FIXSideToSide(char side) {
+        return side < fixSides.length ? fixSides[side] : null;
+    }
 
     public  OrdType typeToFIXType(OrderType type) {
         return (OrdType)typeMap.getFirst(type);
@@ -595,10 +895,14 @@ public class BanzaiApplication implements Application {
         observableOrder.deleteObserver(observer);
     }
 
+    /**
+     *  Tells observers of an order's change with the snapshot the order
+     *  table was given in the same flush, so they read what it shows.
+     */
     public class ObservableOrder extends Observable {
-        public void update(Order order) {
+        public void update(OrderSnapshot snapshot) {
             setChanged();
-            notifyObservers(order);
+            notifyObservers(snapshot);
             clearChanged();
         }
     }
@@ -629,6 +933,13 @@ public class BanzaiApplication implements Application {
         sideMap.put(OrderSide.CROSS, new Side(Side.CROSS));
         sideMap.put(OrderSide.CROSS_SHORT, new Side(Side.CROSS_SHORT));
 
+        fixSides[Side.BUY] = OrderSide.BUY;
+        fixSides[Side.SELL] = OrderSide.SELL;
+        fixSides[Side.SELL_SHORT] = OrderSide.SHORT_SELL;
+        fixSides[Side.SELL_SHORT_EXEMPT] = OrderSide.SHORT_SELL_EXEMPT;
+        fixSides[Side.CROSS] = OrderSide.CROSS;
+        fixSides[Side.CROSS_SHORT] = OrderSide.CROSS_SHORT;
+
         typeMap.put(OrderType.MARKET, new OrdType(OrdType.MARKET));
         typeMap.put(OrderType.LIMIT, new OrdType(OrdType.LIMIT));
         typeMap.put(OrderType.STOP, new OrdType(OrdType.STOP));
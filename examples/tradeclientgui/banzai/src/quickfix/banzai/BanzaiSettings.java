@@ -0,0 +1,105 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import quickfix.ConfigError;
+import quickfix.FieldConvertError;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+/**
+ *  Reads optional Banzai settings, falling back to a default when the
+ *  setting is absent or cannot be converted.  A null SessionID reads
+ *  the default section.
+ */
+public class BanzaiSettings {
+    private SessionSettings settings;
+
+    public BanzaiSettings(SessionSettings settings) {
+        this.settings = settings;
+    }
+
+    public boolean has(SessionID sessionID, String key) {
+        if(settings == null)
+            return false;
+        if(sessionID != null)
+            return settings.isSetting(sessionID, key);
+        try {
+            return settings.get().has(key);
+        } catch(ConfigError e) {
+            return false;
+        }
+    }
+
+    public String getString(SessionID sessionID, String key, String value) {
+        if(!has(sessionID, key))
+            return value;
+        try {
+            return sessionID == null ? settings.get().getString(key)
+                   : settings.getString(sessionID, key);
+        } catch(ConfigError e) {
+            System.out.println(e);
+        } catch(FieldConvertError e) {
+            System.out.println(e);
+        }
+        return value;
+    }
+
+    public long getLong(SessionID sessionID, String key, long value) {
+        if(!has(sessionID, key))
+            return value;
+        try {
+            return sessionID == null ? settings.get().getLong(key)
+                   : settings.getLong(sessionID, key);
+        } catch(ConfigError e) {
+            System.out.println(e);
+        } catch(FieldConvertError e) {
+            System.out.println(e);
+        }
+        return value;
+    }
+
+    public double getDouble(SessionID sessionID, String key, double value) {
+        if(!has(sessionID, key))
+            return value;
+        try {
+            return sessionID == null ? settings.get().getDouble(key)
+                   : settings.getDouble(sessionID, key);
+        } catch(ConfigError e) {
+            System.out.println(e);
+        } catch(FieldConvertError e) {
+            System.out.println(e);
+        }
+        return value;
+    }
+
+    public boolean getBool(SessionID sessionID, String key, boolean value) {
+        if(!has(sessionID, key))
+            return value;
+        try {
+            return sessionID == null ? settings.get().getBool(key)
+                   : settings.getBool(sessionID, key);
+        } catch(ConfigError e) {
+            System.out.println(e);
+        } catch(FieldConvertError e) {
+            System.out.println(e);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,105 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Outcome of each order handed to BanzaiApplication.sendBatch,
+ *  recorded from the sender threads as orders go out.  The batch is
+ *  done once every order has been sent or has failed; await waits for
+ *  that and should not be called on the Swing thread.
+ */
+public class BatchResult {
+    private ArrayList sent = new ArrayList();
+    private ArrayList failed = new ArrayList();
+    private HashSet sentOrders = new HashSet();
+    private HashMap errors = new HashMap();
+    private CountDownLatch done;
+
+    BatchResult(int orders) {
+        done = new CountDownLatch(orders);
+    }
+
+    void sent(Order order) {
+        synchronized(this) {
+            sent.add(order);
+            sentOrders.add(order);
+        }
+        done.countDown();
+    }
+
+    void failed(Order order, String error) {
+        synchronized(this) {
+            failed.add(order);
+            errors.put(order, error == null ? "Not sent" : error);
+        }
+        done.countDown();
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     *  @return false if the batch was not done in time
+     */
+    public boolean await(long timeout, TimeUnit unit)
+    throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public synchronized boolean isSent(Order order) {
+        return sentOrders.contains(order);
+    }
+
+    /**
+     *  @return why the order was not sent, or null if it was
+     */
+    public synchronized String getError(Order order) {
+        return (String)errors.get(order);
+    }
+
+    /**
+     *  @return the orders sent so far
+     */
+    public synchronized List getSent() {
+        return new ArrayList(sent);
+    }
+
+    /**
+     *  @return the orders that have failed so far
+     */
+    public synchronized List getFailed() {
+        return new ArrayList(failed);
+    }
+
+    public synchronized String toString() {
+        return sent.size() + " sent, " + failed.size() + " failed";
+    }
+}
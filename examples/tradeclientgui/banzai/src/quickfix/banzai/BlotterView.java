@@ -0,0 +1,306 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.Arrays;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ *  Filtered and sorted view of a blotter that JTable can show in place
+ *  of the blotter itself.
+ *
+ *  The rows that pass the filter are kept in an OrderStatisticTree in
+ *  sort order, so as the blotter announces inserted and changed rows,
+ *  each one is placed again in O(log n) rather than the whole view
+ *  being sorted.  Each row's sort value is remembered, so a row is
+ *  only moved when its value or its membership changes.  Ties keep
+ *  the blotter's order.  Used from the Swing thread.
+ *
+ *  Unsorted and unfiltered, the view shows every blotter row in place,
+ *  including rows the blotter has spilled, which it reads back as they
+ *  are scrolled to.  Sorted or filtered, only the rows the blotter still
+ *  holds in memory, from getFirstRow on, are shown, since placing a row
+ *  needs its value.  They are kept in a ring of slots, row modulo its
+ *  length, so the view's memory follows the blotter's rather than its
+ *  history, and rows that leave memory leave the view.
+ */
+public class BlotterView extends AbstractTableModel
+    implements TableModelListener {
+
+    // beyond this many rows in one change, the table is told to redraw
+    private final static int MAX_ROW_EVENTS = 16;
+
+    public interface Filter {
+        boolean include(CoalescingTableModel model, int row);
+    }
+
+    private CoalescingTableModel model;
+    private Filter filter = null;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private Comparable[] values = new Comparable[1024];
+    private int firstRow = 0;
+    private int lastRow = -1;
+    // holds slots, not rows
+    private OrderStatisticTree rows;
+
+    public BlotterView(CoalescingTableModel model) {
+        this.model = model;
+        rows = new OrderStatisticTree(new OrderStatisticTree.RowComparator() {
+            public int compare(int a, int b) {
+                return compareSlots(a, b);
+            }
+        });
+        rebuild();
+        model.addTableModelListener(this);
+    }
+
+    public CoalescingTableModel getModel() {
+        return model;
+    }
+
+    /**
+     *  @param filter null to show every row
+     */
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+        rebuild();
+        fireTableDataChanged();
+    }
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     *  @param column -1 to keep the blotter's order
+     */
+    public void setSort(int column, boolean ascending) {
+        this.sortColumn = column;
+        this.ascending = ascending;
+        rebuild();
+        fireTableDataChanged();
+    }
+    public int getSortColumn() {
+        return sortColumn;
+    }
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     *  @return the blotter row shown at the view row
+     */
+    public int getModelRow(int viewRow) {
+        if(isDirect())
+            return viewRow < 0 || viewRow >= model.getRowCount()
+                   ? -1 : viewRow;
+        int slot = rows.select(viewRow);
+        return slot < 0 ? -1 : rowOf(slot);
+    }
+
+    /**
+     *  @return the view row of the blotter row, or -1 if it is filtered
+     *  out or no longer held
+     */
+    public int getViewRow(int modelRow) {
+        if(isDirect())
+            return modelRow < 0 || modelRow >= model.getRowCount()
+                   ? -1 : modelRow;
+        if(modelRow < firstRow || modelRow > lastRow)
+            return -1;
+        return rows.rank(slotOf(modelRow));
+    }
+
+    public void tableChanged(TableModelEvent e) {
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        if(first == TableModelEvent.HEADER_ROW
+                || e.getType() == TableModelEvent.DELETE
+                || last == Integer.MAX_VALUE) {
+            rebuild();
+            fireTableDataChanged();
+            return;
+        }
+        if(isDirect()) {
+            fireTableChanged(new TableModelEvent
+                             (this, first, last, e.getColumn(), e.getType()));
+            return;
+        }
+
+        boolean insert = e.getType() == TableModelEvent.INSERT;
+        int newFirstRow = model.getFirstRow();
+        if(insert && last - newFirstRow + 1 > values.length) {
+            // the window outgrew the ring
+            rebuild();
+            fireTableDataChanged();
+            return;
+        }
+
+        boolean fire = last - first < MAX_ROW_EVENTS
+                       && newFirstRow - firstRow < MAX_ROW_EVENTS;
+        boolean moved = evict(newFirstRow, fire);
+        first = Math.max(first, firstRow);
+        if(insert)
+            lastRow = Math.max(lastRow, last);
+        last = Math.min(last, lastRow);
+        for(int row = first; row <= last; ++row)
+            moved |= update(row, fire);
+        if(fire)
+            return;
+        if(moved)
+            fireTableDataChanged();
+        else if(rows.size() > 0)
+            fireTableRowsUpdated(0, rows.size() - 1);
+    }
+
+    // drops the rows the blotter no longer holds, oldest first, so the
+    // rows left keep their slots; returns whether any was shown
+    private boolean evict(int newFirstRow, boolean fire) {
+        boolean moved = false;
+        while(firstRow < newFirstRow && firstRow <= lastRow) {
+            int slot = slotOf(firstRow);
+            int before = rows.rank(slot);
+            if(before >= 0) {
+                rows.remove(slot);
+                moved = true;
+                if(fire)
+                    fireTableRowsDeleted(before, before);
+            }
+            values[slot] = null;
+            firstRow++;
+        }
+        firstRow = Math.max(firstRow, newFirstRow);
+        return moved;
+    }
+
+    // places the row again; returns whether the view's rows moved
+    private boolean update(int row, boolean fire) {
+        int slot = slotOf(row);
+        boolean included = filter == null || filter.include(model, row);
+        Comparable value = sortValue(row);
+        int before = rows.rank(slot);
+
+        if(before >= 0 && included && compare(values[slot], value) == 0) {
+            if(fire)
+                fireTableRowsUpdated(before, before);
+            return false;
+        }
+        if(before < 0 && !included) {
+            values[slot] = value;
+            return false;
+        }
+
+        if(before >= 0) {
+            rows.remove(slot);
+            if(fire)
+                fireTableRowsDeleted(before, before);
+        }
+        values[slot] = value;
+        if(included) {
+            rows.insert(slot);
+            if(fire) {
+                int after = rows.rank(slot);
+                fireTableRowsInserted(after, after);
+            }
+        }
+        return true;
+    }
+
+    private void rebuild() {
+        rows.clear();
+        if(isDirect()) {
+            // the ring is filled again once sorted or filtered
+            Arrays.fill(values, null);
+            firstRow = 0;
+            lastRow = -1;
+            return;
+        }
+        firstRow = model.getFirstRow();
+        lastRow = model.getRowCount() - 1;
+        int count = lastRow - firstRow + 1;
+        if(count > values.length)
+            values = new Comparable
+                     [Math.max(count, Math.max(1024, values.length * 2))];
+        for(int row = firstRow; row <= lastRow; ++row) {
+            int slot = slotOf(row);
+            values[slot] = sortValue(row);
+            if(filter == null || filter.include(model, row))
+                rows.insert(slot);
+        }
+    }
+
+    // rows are shown in place, spilled or not
+    private boolean isDirect() {
+        return sortColumn < 0 && filter == null;
+    }
+
+    private int slotOf(int row) {
+        return row % values.length;
+    }
+
+    // the held row in the slot
+    private int rowOf(int slot) {
+        int length = values.length;
+        return firstRow + ((slot - firstRow % length) + length) % length;
+    }
+
+    private Comparable sortValue(int row) {
+        return sortColumn < 0 ? null : model.getSortValue(row, sortColumn);
+    }
+
+    private int compareSlots(int a, int b) {
+        int order = compare(values[a], values[b]);
+        if(order != 0)
+            return ascending ? order : -order;
+        int rowA = rowOf(a);
+        int rowB = rowOf(b);
+        return rowA < rowB ? -1 : (rowA == rowB ? 0 : 1);
+    }
+
+    // nulls come first
+    private static int compare(Comparable a, Comparable b) {
+        if(a == null)
+            return b == null ? 0 : -1;
+        if(b == null)
+            return 1;
+        return a.compareTo(b);
+    }
+
+    public int getRowCount() {
+        return isDirect() ? model.getRowCount() : rows.size();
+    }
+
+    public int getColumnCount() {
+        return model.getColumnCount();
+    }
+
+    public String getColumnName(int columnIndex) {
+        return model.getColumnName(columnIndex);
+    }
+
+    public Class getColumnClass(int columnIndex) {
+        return model.getColumnClass(columnIndex);
+    }
+
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return model.getValueAt(getModelRow(rowIndex), columnIndex);
+    }
+}
@@ -0,0 +1,145 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import quickfix.SessionID;
+
+/**
+ *  Generates ClOrdIDs as a session prefix followed by a sequence number.
+ *
+ *  The sequence is shared by all sessions and advanced with a single
+ *  atomic increment.  When a file is given, the generator reserves
+ *  numbers in blocks and records the end of the current block in the
+ *  file before handing out numbers from it, so a restart continues
+ *  after anything that might have been used.  Only the first number of
+ *  each block costs a disk write.
+ */
+public class ClOrdIDGenerator implements OrderIDGenerator {
+    public final static String PREFIX = "ClOrdIDPrefix";
+    public final static String SEQUENCE_FILE = "clordid.seq";
+    public final static int DEFAULT_BLOCK_SIZE = 1000;
+
+    private static ThreadLocal buffers = new ThreadLocal() {
+        protected Object initialValue() {
+            return new char[64];
+        }
+    };
+
+    private BanzaiSettings settings;
+    private RandomAccessFile file = null;
+    private int blockSize;
+    private AtomicLong next;
+    private volatile long limit;
+    private ConcurrentHashMap prefixes = new ConcurrentHashMap();
+
+    /**
+     *  In memory generator; numbering restarts at 1 with the process.
+     */
+    public ClOrdIDGenerator() {
+        this(null, null, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     *  @param settings supplies the ClOrdIDPrefix of each session;
+     *  without one the session's SenderCompID is used
+     *  @param file where reserved blocks are recorded, or null to keep
+     *  the sequence in memory
+     */
+    public ClOrdIDGenerator(BanzaiSettings settings, File file, int blockSize) {
+        this.settings = settings;
+        this.blockSize = blockSize;
+        long start = 1;
+        if(file != null) {
+            try {
+                if(file.getParentFile() != null)
+                    file.getParentFile().mkdirs();
+                this.file = new RandomAccessFile(file, "rwd");
+                if(this.file.length() >= 8)
+                    start = Math.max(start, this.file.readLong());
+            } catch(IOException e) {
+                System.out.println(e);
+                this.file = null;
+            }
+        }
+        next = new AtomicLong(start);
+        limit = this.file == null ? Long.MAX_VALUE : start;
+    }
+
+    public String nextID(SessionID sessionID) {
+        long sequence = next.getAndIncrement();
+        if(sequence >= limit)
+            reserve(sequence);
+        return format(getPrefix(sessionID), sequence);
+    }
+
+    public long peek() {
+        return next.get();
+    }
+
+    private synchronized void reserve(long sequence) {
+        while(sequence >= limit) {
+            long end = limit + blockSize;
+            try {
+                file.seek(0);
+                file.writeLong(end);
+            } catch(IOException e) {
+                // keep going; a restart may reuse IDs from this block
+                System.out.println(e);
+            }
+            limit = end;
+        }
+    }
+
+    private String getPrefix(SessionID sessionID) {
+        if(sessionID == null)
+            return "";
+        String prefix = (String)prefixes.get(sessionID);
+        if(prefix == null) {
+            prefix = settings == null ? null
+                     : settings.getString(sessionID, PREFIX, null);
+            if(prefix == null)
+                prefix = sessionID.getSenderCompID() + "-";
+            prefixes.putIfAbsent(sessionID, prefix);
+        }
+        return prefix;
+    }
+
+    private static String format(String prefix, long sequence) {
+        char[] buffer = (char[])buffers.get();
+        int length = prefix.length();
+        if(length + 20 > buffer.length) {
+            buffer = new char[length + 20];
+            buffers.set(buffer);
+        }
+        prefix.getChars(0, length, buffer, 0);
+
+        int digits = 1;
+        for(long n = sequence; n >= 10; n /= 10)
+            digits++;
+        int position = length + digits;
+        for(long n = sequence; position > length; n /= 10)
+            buffer[--position] = (char)('0' + n % 10);
+        return new String(buffer, 0, length + digits);
+    }
+}
@@ -0,0 +1,118 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+/**
+ *  Open addressing map from ClOrdID to row number.  Lookups probe two
+ *  parallel arrays and never allocate.  Not thread safe.
+ */
+public class ClOrdIDIndex {
+    private String[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    public ClOrdIDIndex() {
+        this(16);
+    }
+
+    public ClOrdIDIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) - 1) << 2;
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     *  @return the row for the ID, or -1 if it is not indexed
+     */
+    public int get(String id) {
+        int slot = find(id);
+        return keys[slot] == null ? -1 : values[slot];
+    }
+
+    public void put(String id, int row) {
+        int slot = find(id);
+        if(keys[slot] == null) {
+            if((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+                slot = find(id);
+            }
+            keys[slot] = id;
+            size++;
+        }
+        values[slot] = row;
+    }
+
+    public int remove(String id) {
+        int hole = find(id);
+        if(keys[hole] == null)
+            return -1;
+        int row = values[hole];
+        // backward shift deletion keeps probe chains intact
+        int next = hole;
+        while(true) {
+            next = (next + 1) & mask;
+            String candidate = keys[next];
+            if(candidate == null)
+                break;
+            int home = hash(candidate) & mask;
+            if(((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = candidate;
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = null;
+        size--;
+        return row;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(String id) {
+        int slot = hash(id) & mask;
+        String key;
+        while((key = keys[slot]) != null && !key.equals(id))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for(int i = 0; i < oldKeys.length; ++i) {
+            if(oldKeys[i] != null) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
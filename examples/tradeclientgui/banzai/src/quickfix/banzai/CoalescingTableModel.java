@@ -0,0 +1,179 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.BitSet;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ *  Table model that holds back its change notifications until it is
+ *  flushed, so repainting keeps pace with the screen rather than with
+ *  the message rate.  The model keeps no clock of its own: whoever
+ *  paces the frames, the OrderStateEngine in Banzai, is told through
+ *  setChangeListener when a clean model has changes, and calls flush
+ *  once per frame on the Swing thread.
+ *
+ *  Subclasses report rows as they are appended or changed, from any
+ *  thread.  Each flush, appended rows become visible in one insertion
+ *  event, and changed rows are fired as one update per contiguous run,
+ *  or as a single update spanning them all when the runs are many.
+ *  Until then getRowCount keeps returning the rows already announced.
+ *  Just before they are fired, refreshRow is called for each row, so
+ *  subclasses can work out what the row will look like.
+ */
+public abstract class CoalescingTableModel extends AbstractTableModel {
+    public final static String REFRESH_RATE = "TableRefreshRate";
+    public final static int DEFAULT_REFRESH_RATE = 30;
+
+    // beyond this many runs of changed rows, one event covers them all
+    private final static int MAX_UPDATE_EVENTS = 16;
+
+    private Object changes = new Object();
+    private BitSet updated = new BitSet();
+    private int rowCount = 0;
+    private int pendingRowCount = 0;
+    private boolean scheduled = false;
+    private Runnable changeListener = null;
+
+    /**
+     *  Sets what is run, from the thread reporting them, when changes
+     *  arrive at a model with nothing waiting to be flushed.  Run at
+     *  once if changes are already waiting.
+     */
+    public void setChangeListener(Runnable listener) {
+        boolean waiting;
+        synchronized(changes) {
+            changeListener = listener;
+            waiting = scheduled;
+        }
+        if(waiting && listener != null)
+            listener.run();
+    }
+
+    private void changed() {
+        Runnable listener;
+        synchronized(changes) {
+            if(scheduled)
+                return;
+            scheduled = true;
+            listener = changeListener;
+        }
+        if(listener != null)
+            listener.run();
+    }
+
+    /**
+     *  Records rows appended to the end of the model.
+     */
+    protected void rowsInserted(int firstRow, int lastRow) {
+        synchronized(changes) {
+            pendingRowCount = Math.max(pendingRowCount, lastRow + 1);
+        }
+        changed();
+    }
+
+    /**
+     *  Records rows whose values have changed.
+     */
+    protected void rowsUpdated(int firstRow, int lastRow) {
+        synchronized(changes) {
+            updated.set(firstRow, lastRow + 1);
+        }
+        changed();
+    }
+
+    /**
+     *  Fires the changes recorded since the last flush.  Called on the
+     *  Swing thread.
+     */
+    public void flush() {
+        int firstInserted;
+        int lastInserted;
+        BitSet rows;
+        synchronized(changes) {
+            scheduled = false;
+            firstInserted = rowCount;
+            lastInserted = pendingRowCount - 1;
+            if(lastInserted < firstInserted && updated.isEmpty())
+                return;
+            rowCount = pendingRowCount;
+            rows = updated;
+            updated = new BitSet();
+        }
+
+        for(int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1))
+            refreshRow(i);
+        for(int i = firstInserted; i <= lastInserted; ++i) {
+            if(!rows.get(i))
+                refreshRow(i);
+        }
+
+        // rows just inserted are painted fresh
+        if(lastInserted >= firstInserted)
+            rows.clear(firstInserted, lastInserted + 1);
+        fireUpdated(rows);
+        if(lastInserted >= firstInserted)
+            fireTableRowsInserted(firstInserted, lastInserted);
+    }
+
+    /**
+     *  Called on the Swing thread for each row about to be announced as
+     *  inserted or changed.
+     */
+    protected void refreshRow(int row) {}
+
+    private void fireUpdated(BitSet rows) {
+        if(rows.isEmpty())
+            return;
+        int runs = 0;
+        for(int i = rows.nextSetBit(0); i >= 0;
+                i = rows.nextSetBit(rows.nextClearBit(i)))
+            runs++;
+        if(runs > MAX_UPDATE_EVENTS) {
+            fireTableRowsUpdated(rows.nextSetBit(0), rows.length() - 1);
+            return;
+        }
+        for(int i = rows.nextSetBit(0); i >= 0;) {
+            int end = rows.nextClearBit(i);
+            fireTableRowsUpdated(i, end - 1);
+            i = rows.nextSetBit(end);
+        }
+    }
+
+    /**
+     *  @return the oldest row still held in memory; views show the rows
+     *  from here on.  By default every row is held.
+     */
+    public int getFirstRow() {
+        return 0;
+    }
+
+    /**
+     *  @return what the cell sorts by; by default its text
+     */
+    public Comparable getSortValue(int row, int column) {
+        return (Comparable)getValueAt(row, column);
+    }
+
+    public int getRowCount() {
+        synchronized(changes) {
+            return rowCount;
+        }
+    }
+}
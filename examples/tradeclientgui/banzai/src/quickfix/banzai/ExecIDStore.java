@@ -0,0 +1,131 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+
+package quickfix.banzai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+/**
+ *  Per session ExecID de-duplication.  Retention is configured for each
+ *  session with the ExecIDWindowSize, ExecIDMaxAge (seconds) and
+ *  ExecIDResetOnNewDay settings.
+ *
+ *  When the session has a FileStorePath its window is memory mapped
+ *  from a .execids file beside the message store, so fills replayed
+ *  after a restart are still recognized.  Set ExecIDPersist=N to keep
+ *  the window in memory only.
+ */
+public class ExecIDStore {
+    public final static String WINDOW_SIZE = "ExecIDWindowSize";
+    public final static String MAX_AGE = "ExecIDMaxAge";
+    public final static String RESET_ON_NEW_DAY = "ExecIDResetOnNewDay";
+    public final static String PERSIST = "ExecIDPersist";
+    public final static String FILE_STORE_PATH = "FileStorePath";
+
+    public final static int DEFAULT_WINDOW_SIZE = 1 << 16;
+
+    private BanzaiSettings settings;
+    private HashMap windows = new HashMap();
+
+    public ExecIDStore(SessionSettings settings) {
+        this.settings = new BanzaiSettings(settings);
+    }
+
+    public boolean alreadyProcessed(String execID, SessionID sessionID) {
+        return getWindow(sessionID).checkAndAdd
+               (execID, System.currentTimeMillis());
+    }
+
+    public synchronized ExecIDWindow getWindow(SessionID sessionID) {
+        ExecIDWindow window = (ExecIDWindow)windows.get(sessionID);
+        if(window == null) {
+            window = createWindow(sessionID);
+            windows.put(sessionID, window);
+        }
+        return window;
+    }
+
+    protected ExecIDWindow createWindow(SessionID sessionID) {
+        int size = (int)settings.getLong
+                   (sessionID, WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+        long maxAge = settings.getLong(sessionID, MAX_AGE, 0) * 1000;
+        boolean resetOnNewDay = settings.getBool
+                                (sessionID, RESET_ON_NEW_DAY, true);
+
+        String path = settings.getString(sessionID, FILE_STORE_PATH, null);
+        if(path != null && settings.getBool(sessionID, PERSIST, true)) {
+            try {
+                return new ExecIDWindow(size, maxAge, resetOnNewDay,
+                                        map(new File(path, fileName(sessionID)),
+                                            ExecIDWindow.length(size)));
+            } catch(IOException e) {
+                System.out.println(e);
+            }
+        }
+        return new ExecIDWindow(size, maxAge, resetOnNewDay);
+    }
+
+    /**
+     *  Marks every window consistent.  Mapped windows are written back
+     *  by the operating system once unmapped.
+     */
+    public synchronized void close() {
+        Iterator i = windows.values().iterator();
+        while(i.hasNext())
+            ((ExecIDWindow)i.next()).close();
+    }
+
+    private static String fileName(SessionID sessionID) {
+        StringBuffer name = new StringBuffer();
+        name.append(sessionID.getBeginString()).append('-')
+        .append(sessionID.getSenderCompID()).append('-')
+        .append(sessionID.getTargetCompID());
+        String qualifier = sessionID.getSessionQualifier();
+        if(qualifier != null && qualifier.length() > 0)
+            name.append('-').append(qualifier);
+        return name.append(".execids").toString();
+    }
+
+    private static LongBuffer map(File file, int longs)
+    throws IOException {
+        file.getParentFile().mkdirs();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long bytes = (long)longs * 8;
+            if(raf.length() != bytes)
+                raf.setLength(bytes);
+            MappedByteBuffer buffer = raf.getChannel().map
+                                      (FileChannel.MapMode.READ_WRITE, 0, bytes);
+            return buffer.order(ByteOrder.nativeOrder()).asLongBuffer();
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+
+package quickfix.banzai;
+
+import java.nio.LongBuffer;
+
+/**
+ *  Bounded set of recently seen ExecIDs for one session.
+ *
+ *  IDs are kept as 64 bit hashes in an open addressing table, and a
+ *  ring remembers their arrival order so the oldest can be evicted
+ *  once the window is full, once they are older than the maximum age,
+ *  or when the trading day rolls over.  Not thread safe; a session's
+ *  reports are applied by one thread at a time.
+ *
+ *  The header, table and ring all live in one LongBuffer, so a window
+ *  can be laid directly over a memory mapped file and picked up again
+ *  after a restart without being rebuilt.  The header records whether
+ *  the window was closed cleanly; if it was not, the table is rebuilt
+ *  from the ring.  The ring's head and size share one header word that
+ *  is written after the table, so a crash part way through an update
+ *  leaves the ring as it was before or after it.
+ */
+public class ExecIDWindow {
+    private final static long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private final static long MAGIC_VALUE = 0x4558454349443031L;
+
+    private final static int MAGIC = 0;
+    private final static int CAPACITY = 1;
+    private final static int STATE = 2;
+    private final static int DAY = 3;
+    private final static int CLEAN = 4;
+    private final static int HEADER = 8;
+
+    private int capacity;
+    private long maxAge;
+    private boolean resetOnNewDay;
+
+    private LongBuffer data;
+    private int mask;
+    private int ring;
+    private int head = 0;
+    private int size = 0;
+    private long day = -1;
+
+    /**
+     *  @param capacity number of IDs remembered before the oldest is
+     *  evicted
+     *  @param maxAge milliseconds an ID is remembered, zero for no limit
+     *  @param resetOnNewDay forget every ID when the UTC day changes
+     */
+    public ExecIDWindow(int capacity, long maxAge, boolean resetOnNewDay) {
+        this(capacity, maxAge, resetOnNewDay,
+             LongBuffer.allocate(length(capacity)));
+    }
+
+    /**
+     *  Lays the window over existing storage of at least
+     *  length(capacity) longs.  Storage holding a window of the same
+     *  capacity is reused as is.
+     */
+    public ExecIDWindow(int capacity, long maxAge, boolean resetOnNewDay,
+                        LongBuffer data) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException
+            ("ExecID window capacity must be positive");
+        if(data.capacity() < length(capacity))
+            throw new IllegalArgumentException
+            ("ExecID window storage is too small");
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+        this.resetOnNewDay = resetOnNewDay;
+        this.data = data;
+
+        int tableSize = tableSize(capacity);
+        mask = tableSize - 1;
+        ring = HEADER + tableSize;
+
+        if(data.get(MAGIC) == MAGIC_VALUE
+                && data.get(CAPACITY) == capacity) {
+            long state = data.get(STATE);
+            head = (int)(state >>> 32);
+            size = (int)state;
+            day = data.get(DAY);
+            if(data.get(CLEAN) == 0)
+                rebuild();
+        } else {
+            for(int i = 0; i < length(capacity); ++i)
+                data.put(i, 0);
+            data.put(CAPACITY, capacity);
+            data.put(DAY, day);
+            data.put(MAGIC, MAGIC_VALUE);
+        }
+        data.put(CLEAN, 0);
+    }
+
+    /**
+     *  Number of longs of storage needed for a window of this capacity.
+     */
+    public static int length(int capacity) {
+        return HEADER + tableSize(capacity) + 2 * capacity;
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity) << 2;
+    }
+
+    /**
+     *  Records the ID and reports whether it was already in the window.
+     */
+    public boolean checkAndAdd(CharSequence execID, long now) {
+        expire(now);
+        long hash = hash(execID);
+        int slot = find(hash);
+        if(data.get(slot) == hash)
+            return true;
+
+        if(size == capacity) {
+            remove(data.get(ring + 2 * head));
+            size--;
+            publish();
+            slot = find(hash);
+        }
+        data.put(ring + 2 * head, hash);
+        data.put(ring + 2 * head + 1, now);
+        data.put(slot, hash);
+        head = head + 1 == capacity ? 0 : head + 1;
+        size++;
+        publish();
+        return false;
+    }
+
+    public boolean contains(CharSequence execID, long now) {
+        expire(now);
+        long hash = hash(execID);
+        return data.get(find(hash)) == hash;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for(int i = HEADER; i < ring; ++i)
+            data.put(i, 0);
+        head = 0;
+        size = 0;
+        publish();
+    }
+
+    /**
+     *  Marks the storage as consistent so it is reused without a
+     *  rebuild next time.
+     */
+    public void close() {
+        data.put(CLEAN, 1);
+    }
+
+    private void publish() {
+        data.put(STATE, ((long)head << 32) | size);
+    }
+
+    private void expire(long now) {
+        if(resetOnNewDay) {
+            long today = now / DAY_MILLIS;
+            if(today != day) {
+                if(day != -1)
+                    clear();
+                day = today;
+                data.put(DAY, day);
+            }
+        }
+        if(maxAge <= 0)
+            return;
+        long cutoff = now - maxAge;
+        while(size > 0) {
+            int oldest = oldest();
+            if(data.get(ring + 2 * oldest + 1) >= cutoff)
+                break;
+            remove(data.get(ring + 2 * oldest));
+            size--;
+            publish();
+        }
+    }
+
+    private int oldest() {
+        int oldest = head - size;
+        return oldest < 0 ? oldest + capacity : oldest;
+    }
+
+    private void rebuild() {
+        for(int i = HEADER; i < ring; ++i)
+            data.put(i, 0);
+        int slot = oldest();
+        for(int i = 0; i < size; ++i) {
+            long hash = data.get(ring + 2 * slot);
+            data.put(find(hash), hash);
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+    }
+
+    private int find(long hash) {
+        int slot = HEADER + ((int)hash & mask);
+        long value;
+        while((value = data.get(slot)) != 0 && value != hash)
+            slot = slot + 1 == ring ? HEADER : slot + 1;
+        return slot;
+    }
+
+    // backward shift deletion keeps probe chains intact without tombstones
+    private void remove(long hash) {
+        int hole = find(hash) - HEADER;
+        if(data.get(HEADER + hole) == 0)
+            return;
+        int next = hole;
+        while(true) {
+            next = (next + 1) & mask;
+            long candidate = data.get(HEADER + next);
+            if(candidate == 0)
+                break;
+            int home = (int)candidate & mask;
+            if(((next - home) & mask) >= ((next - hole) & mask)) {
+                data.put(HEADER + hole, candidate);
+                hole = next;
+            }
+        }
+        data.put(HEADER + hole, 0);
+    }
+
+    static long hash(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); ++i) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // zero marks an empty slot
+        return h == 0 ? 1 : h;
+    }
+}
@@ -29,7 +29,12 @@ public class Execution {
     private static int nextID = 1;
 
     public Execution() {
-        ID = new Integer(nextID++).toString();
+        ID = new Integer(generateID()).toString();
+    }
+
+    // executions are created on every inbound worker thread
+    private static synchronized int generateID() {
+        return nextID++;
     }
     public Execution(String ID) {
         this.ID = ID;
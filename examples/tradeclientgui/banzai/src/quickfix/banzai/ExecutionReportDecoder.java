@@ -0,0 +1,199 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.nio.ByteBuffer;
+import quickfix.FieldNotFound;
+import quickfix.Message;
+import quickfix.field.*;
+
+/**
+ *  Reads an ExecutionReport into an ExecutionReportView.
+ *
+ *  Reports are normally read in one pass through a FieldExtractor with
+ *  its own direct buffer.  A report whose values do not fit the buffer,
+ *  or are not ASCII, is read field by field instead; for that each
+ *  decoder owns one holder for every field and tests optional tags
+ *  with isSetField, so neither path allocates fields.  Only a fill
+ *  missing one of its required fields throws FieldNotFound.  Decoders
+ *  are not shared between threads; use get() for the calling thread's.
+ */
+public class ExecutionReportDecoder {
+    private static ThreadLocal decoders = new ThreadLocal() {
+        protected Object initialValue() {
+            return new ExecutionReportDecoder();
+        }
+    };
+
+    private final static int EXEC_ID = 0;
+    private final static int CL_ORD_ID = 1;
+    private final static int ORD_STATUS = 2;
+    private final static int ORDER_QTY = 3;
+    private final static int PRICE = 4;
+    private final static int LAST_SHARES = 5;
+    private final static int LAST_PX = 6;
+    private final static int CUM_QTY = 7;
+    private final static int AVG_PX = 8;
+    private final static int LEAVES_QTY = 9;
+    private final static int SIDE = 10;
+    private final static int SYMBOL = 11;
+    private final static int TEXT = 12;
+
+    private final static int[] TAGS = {
+        ExecID.FIELD, ClOrdID.FIELD, OrdStatus.FIELD, OrderQty.FIELD,
+        Price.FIELD, LastShares.FIELD, LastPx.FIELD, CumQty.FIELD,
+        AvgPx.FIELD, LeavesQty.FIELD, Side.FIELD, Symbol.FIELD, Text.FIELD
+    };
+
+    private FieldExtractor extractor =
+        new FieldExtractor(TAGS, ByteBuffer.allocateDirect(4096));
+
+    private ExecID execID = new ExecID();
+    private ClOrdID clOrdID = new ClOrdID();
+    private OrdStatus ordStatus = new OrdStatus();
+    private OrderQty orderQty = new OrderQty();
+    private Price price = new Price();
+    private LastShares lastShares = new LastShares();
+    private LastPx lastPx = new LastPx();
+    private CumQty cumQty = new CumQty();
+    private AvgPx avgPx = new AvgPx();
+    private LeavesQty leavesQty = new LeavesQty();
+    private Side side = new Side();
+    private Symbol symbol = new Symbol();
+    private Text text = new Text();
+
+    private ExecutionReportView view = new ExecutionReportView();
+
+    public static ExecutionReportDecoder get() {
+        return (ExecutionReportDecoder)decoders.get();
+    }
+
+    /**
+     *  Decodes the report into this decoder's view, which stays valid
+     *  until the next call.  A report missing one of ExecID, ClOrdID or
+     *  OrdStatus throws, as does a fill missing one of LastPx, CumQty,
+     *  AvgPx, Side or Symbol.
+     */
+    public ExecutionReportView decode(Message message) throws FieldNotFound {
+        ExecutionReportView view = this.view;
+        view.clear();
+        FieldExtractor x = extractor;
+        // a report missing a required field is left to the field by
+        // field path, which reports it as FieldNotFound
+        if(!x.extract(message) || !x.isSet(EXEC_ID)
+                || !x.isSet(CL_ORD_ID) || !x.isSet(ORD_STATUS))
+            decodeFields(message, view);
+        else
+            decodeExtracted(view);
+        if(view.isFill())
+            requireFillFields(message, view);
+        return view;
+    }
+
+    // asking the message for a missing field throws its FieldNotFound
+    private void requireFillFields(Message message, ExecutionReportView view)
+    throws FieldNotFound {
+        if(!view.hasLastPx)
+            message.getField(lastPx);
+        if(!view.hasCumQty)
+            message.getField(cumQty);
+        if(!view.hasAvgPx)
+            message.getField(avgPx);
+        if(!view.hasSide)
+            message.getField(side);
+        if(view.symbol == null)
+            message.getField(symbol);
+    }
+
+    private ExecutionReportView decodeExtracted(ExecutionReportView view) {
+        FieldExtractor x = extractor;
+        view.execID = x.getString(EXEC_ID);
+        view.clOrdID = x.getString(CL_ORD_ID);
+        view.ordStatus = x.getChar(ORD_STATUS);
+
+        view.hasOrderQty = x.isSet(ORDER_QTY);
+        if(view.hasOrderQty)
+            view.orderQty = x.getDouble(ORDER_QTY);
+        view.hasPrice = x.isSet(PRICE);
+        if(view.hasPrice)
+            view.price = x.getDouble(PRICE);
+        view.hasLastShares = x.isSet(LAST_SHARES);
+        if(view.hasLastShares)
+            view.lastShares = x.getDouble(LAST_SHARES);
+        view.hasLastPx = x.isSet(LAST_PX);
+        if(view.hasLastPx)
+            view.lastPx = x.getDouble(LAST_PX);
+        view.hasCumQty = x.isSet(CUM_QTY);
+        if(view.hasCumQty)
+            view.cumQty = x.getDouble(CUM_QTY);
+        view.hasAvgPx = x.isSet(AVG_PX);
+        if(view.hasAvgPx)
+            view.avgPx = x.getDouble(AVG_PX);
+        // FIX40 doesn't have LeavesQty
+        view.hasLeavesQty = x.isSet(LEAVES_QTY);
+        if(view.hasLeavesQty)
+            view.leavesQty = x.getDouble(LEAVES_QTY);
+        view.hasSide = x.isSet(SIDE);
+        if(view.hasSide)
+            view.side = x.getChar(SIDE);
+        view.symbol = x.getString(SYMBOL);
+        view.text = x.getString(TEXT);
+        return view;
+    }
+
+    private ExecutionReportView decodeFields(Message message,
+                                             ExecutionReportView view)
+    throws FieldNotFound {
+
+        view.execID = message.getField(execID).getValue();
+        view.clOrdID = message.getField(clOrdID).getValue();
+        view.ordStatus = message.getField(ordStatus).getValue();
+
+        view.hasOrderQty = message.isSetField(OrderQty.FIELD);
+        if(view.hasOrderQty)
+            view.orderQty = message.getField(orderQty).getValue();
+        view.hasPrice = message.isSetField(Price.FIELD);
+        if(view.hasPrice)
+            view.price = message.getField(price).getValue();
+        view.hasLastShares = message.isSetField(LastShares.FIELD);
+        if(view.hasLastShares)
+            view.lastShares = message.getField(lastShares).getValue();
+        view.hasLastPx = message.isSetField(LastPx.FIELD);
+        if(view.hasLastPx)
+            view.lastPx = message.getField(lastPx).getValue();
+        view.hasCumQty = message.isSetField(CumQty.FIELD);
+        if(view.hasCumQty)
+            view.cumQty = message.getField(cumQty).getValue();
+        view.hasAvgPx = message.isSetField(AvgPx.FIELD);
+        if(view.hasAvgPx)
+            view.avgPx = message.getField(avgPx).getValue();
+        // FIX40 doesn't have LeavesQty
+        view.hasLeavesQty = message.isSetField(LeavesQty.FIELD);
+        if(view.hasLeavesQty)
+            view.leavesQty = message.getField(leavesQty).getValue();
+        view.hasSide = message.isSetField(Side.FIELD);
+        if(view.hasSide)
+            view.side = message.getField(side).getValue();
+        if(message.isSetField(Symbol.FIELD))
+            view.symbol = message.getField(symbol).getValue();
+        if(message.isSetField(Text.FIELD))
+            view.text = message.getField(text).getValue();
+        return view;
+    }
+}
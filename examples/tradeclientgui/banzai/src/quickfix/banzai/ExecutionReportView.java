@@ -0,0 +1,78 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+/**
+ *  Flat, mutable view of the ExecutionReport fields Banzai uses.
+ *  Filled by ExecutionReportDecoder and reused for every report, so
+ *  nothing here should be kept once the report has been applied.
+ */
+public class ExecutionReportView {
+    public String execID;
+    public String clOrdID;
+    public char ordStatus;
+
+    public boolean hasOrderQty;
+    public double orderQty;
+    public boolean hasPrice;
+    public double price;
+    public boolean hasLastShares;
+    public double lastShares;
+    public boolean hasLastPx;
+    public double lastPx;
+    public boolean hasCumQty;
+    public double cumQty;
+    public boolean hasAvgPx;
+    public double avgPx;
+    public boolean hasLeavesQty;
+    public double leavesQty;
+    public boolean hasSide;
+    public char side;
+
+    public String symbol;
+    public String text;
+
+    public void clear() {
+        execID = null;
+        clOrdID = null;
+        ordStatus = 0;
+        hasOrderQty = false;
+        orderQty = 0;
+        hasPrice = false;
+        price = 0;
+        hasLastShares = false;
+        lastShares = 0;
+        hasLastPx = false;
+        lastPx = 0;
+        hasCumQty = false;
+        cumQty = 0;
+        hasAvgPx = false;
+        avgPx = 0;
+        hasLeavesQty = false;
+        leavesQty = 0;
+        hasSide = false;
+        side = 0;
+        symbol = null;
+        text = null;
+    }
+
+    public boolean isFill() {
+        return hasLastShares && lastShares > 0;
+    }
+}
@@ -0,0 +1,188 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ *  Append only file of executions that have left the blotter's memory.
+ *  Each execution is a fixed width record, so the nth one is found
+ *  without an index.  The symbol is kept in the record's last 19
+ *  bytes, up to 18 ASCII characters; a longer or non ASCII symbol is
+ *  kept in memory beside the file instead, so none is cut short.
+ *
+ *  Records are buffered and written a page at a time.  The file only
+ *  lives as long as the blotter; it is emptied when opened.  Not
+ *  thread safe; the blotter uses it from one spill thread.
+ */
+public class ExecutionSpill {
+    public final static int RECORD = 32;
+    private final static int QUANTITY = 0;
+    private final static int PRICE = 4;
+    private final static int SIDE = 12;
+    private final static int SYMBOL = 13;
+    private final static int SYMBOL_WIDTH = RECORD - SYMBOL;
+
+    // side byte of an execution without a side
+    private final static int NO_SIDE = 0xff;
+    // length byte of a null symbol, and of one kept in overflow
+    private final static int NULL_SYMBOL = 0xff;
+    private final static int OVERFLOW_SYMBOL = 0xfe;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private ByteBuffer pending;
+    private int written = 0;
+    private HashMap overflow = new HashMap();
+
+    /**
+     *  @param pageRecords records buffered before they are written
+     */
+    public ExecutionSpill(File file, int pageRecords) throws IOException {
+        if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        channel = this.file.getChannel();
+        pending = ByteBuffer.allocate(RECORD * pageRecords)
+                  .order(ByteOrder.nativeOrder());
+    }
+
+    public int size() {
+        return written + pending.position() / RECORD;
+    }
+
+    public void append(Execution execution) throws IOException {
+        if(!pending.hasRemaining())
+            flush();
+        int offset = pending.position();
+        pending.putInt(offset + QUANTITY, execution.getQuantity());
+        pending.putDouble(offset + PRICE, execution.getPrice());
+        pending.put(offset + SIDE,
+                    (byte)indexOf(OrderSide.toArray(), execution.getSide()));
+        String symbol = execution.getSymbol();
+        if(!putString(pending, offset + SYMBOL, symbol)) {
+            pending.put(offset + SYMBOL, (byte)OVERFLOW_SYMBOL);
+            overflow.put(new Integer(size()), symbol);
+        }
+        pending.position(offset + RECORD);
+    }
+
+    /**
+     *  Reads back the records from first on into the array, as many as
+     *  fit and have been appended.
+     *
+     *  @return the number of records read
+     */
+    public int read(int first, Execution[] executions) throws IOException {
+        int count = Math.min(executions.length, size() - first);
+        if(count <= 0)
+            return 0;
+        if(first + count > written)
+            flush();
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD * count)
+                            .order(ByteOrder.nativeOrder());
+        long position = (long)first * RECORD;
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                break;
+        }
+        count = buffer.position() / RECORD;
+        Object[] sides = OrderSide.toArray();
+        for(int i = 0; i < count; ++i) {
+            int offset = i * RECORD;
+            Execution execution = new Execution(null);
+            execution.setQuantity(buffer.getInt(offset + QUANTITY));
+            execution.setPrice(buffer.getDouble(offset + PRICE));
+            int side = buffer.get(offset + SIDE) & 0xff;
+            execution.setSide(side < sides.length
+                              ? (OrderSide)sides[side] : null);
+            if((buffer.get(offset + SYMBOL) & 0xff) == OVERFLOW_SYMBOL)
+                execution.setSymbol((String)overflow.get
+                                    (new Integer(first + i)));
+            else
+                execution.setSymbol(getString(buffer, offset + SYMBOL));
+            executions[i] = execution;
+        }
+        return count;
+    }
+
+    public void flush() throws IOException {
+        pending.flip();
+        long position = (long)written * RECORD;
+        while(pending.hasRemaining())
+            position += channel.write(pending, position);
+        written = (int)(position / RECORD);
+        pending.clear();
+    }
+
+    public void close() {
+        try {
+            file.close();
+        } catch(IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    private static int indexOf(Object[] array, Object value) {
+        for(int i = 0; i < array.length; ++i) {
+            if(array[i] == value)
+                return i;
+        }
+        return NO_SIDE;
+    }
+
+    // the first byte holds the length
+    private static String getString(ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xff;
+        if(length == NULL_SYMBOL)
+            return null;
+        char[] chars = new char[length];
+        for(int i = 0; i < length; ++i)
+            chars[i] = (char)(buffer.get(offset + 1 + i) & 0xff);
+        return new String(chars);
+    }
+
+    // false if the value is too long or not ASCII
+    private static boolean putString(ByteBuffer buffer, int offset,
+                                     String value) {
+        if(value == null) {
+            buffer.put(offset, (byte)NULL_SYMBOL);
+            return true;
+        }
+        int length = value.length();
+        if(length > SYMBOL_WIDTH - 1)
+            return false;
+        for(int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if(c > 0x7f)
+                return false;
+            buffer.put(offset + 1 + i, (byte)c);
+        }
+        buffer.put(offset, (byte)length);
+        return true;
+    }
+}
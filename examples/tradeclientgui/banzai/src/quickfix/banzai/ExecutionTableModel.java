@@ -21,34 +21,92 @@ package quickfix.banzai;
 
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
-import javax.swing.table.AbstractTableModel;
 import java.util.Collections;
 import java.util.Comparator;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.swing.SwingUtilities;
 
-public class ExecutionTableModel extends AbstractTableModel {
+/**
+ *  Executions never change once added, so each row's cell text is
+ *  worked out once, when the row is announced.
+ *
+ *  Only the most recent executions are held in memory, in a ring.  Older
+ *  ones are spilled to an ExecutionSpill file and read back a page at a
+ *  time when scrolled to, with a few pages cached, so the blotter's
+ *  memory stays the same however many fills arrive.  The file is only
+ *  touched by a spill thread: a page not yet cached shows blank rows
+ *  and is announced as updated once it has been read.
+ *
+ *  Only fills in the ring are checked for a repeated exchange ID;
+ *  repeats of older fills are dropped by the ExecIDStore before they
+ *  reach the blotter.  Used from the Swing thread.
+ */
+public class ExecutionTableModel extends CoalescingTableModel {
+    public final static String BLOTTER_SIZE = "ExecutionBlotterSize";
+    public final static String SPILL_FILE = "executions.spill";
+    public final static int DEFAULT_CAPACITY = 1 << 14;
+
+    private final static int PAGE_ROWS = 256;
+    private final static int PAGES = 8;
 
     private final static int SYMBOL = 0;
     private final static int QUANTITY = 1;
     private final static int SIDE = 2;
     private final static int PRICE = 3;
 
-    private HashMap rowToExecution;
-    private HashMap idToRow;
-    private HashMap idToExecution;
-    private HashMap exchangeIdToExecution;
+    private Execution[] recent;
+    private RowRenderState[] recentRenders;
+    private int count = 0;
+    private HashMap exchangeIdToExecution = new HashMap();
+
+    private File spillFile = null;
+    private SpillThread spillThread = null;
+    private HashSet loading = new HashSet();
+    private int spilled = 0;
+    private LinkedHashMap pages = new LinkedHashMap(PAGES, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > PAGES;
+        }
+    };
+    private RowRenderState missing;
 
     private String[] headers;
     private Class[] classes;
 
     public ExecutionTableModel() {
-        rowToExecution = new HashMap();
-        idToRow = new HashMap();
-        idToExecution = new HashMap();
-        exchangeIdToExecution = new HashMap();
-
         headers = new String[]
                   {"Symbol", "Quantity", "Side", "Price"};
+        setCapacity(DEFAULT_CAPACITY);
+        missing = new RowRenderState(headers.length);
+        for(int i = 0; i < headers.length; ++i)
+            missing.setText(i, "");
+    }
+
+    /**
+     *  Sets how many executions are kept in memory.  Only takes effect
+     *  before the first execution is added.
+     */
+    public void setCapacity(int capacity) {
+        if(count > 0)
+            return;
+        recent = new Execution[Math.max(1, capacity)];
+        recentRenders = new RowRenderState[recent.length];
+    }
+
+    /**
+     *  Sets the file older executions are spilled to.  Without one, a
+     *  temporary file is used.
+     */
+    public void setSpillFile(File file) {
+        spillFile = file;
     }
 
     public boolean isCellEditable(int rowIndex, int columnIndex) {
@@ -56,25 +114,204 @@ public class ExecutionTableModel extends AbstractTableModel {
     }
 
     public void addExecution(Execution execution) {
-        int row = rowToExecution.size();
-
         if(exchangeIdToExecution.get(execution.getExchangeID()) != null)
             return;
 
-        rowToExecution.put(new Integer(row), execution);
-        idToRow.put(execution.getID(), new Integer(row));
-        idToExecution.put(execution.getID(), execution);
+        int row = count;
+        int slot = row % recent.length;
+        Execution evicted = recent[slot];
+        if(evicted != null) {
+            spill(evicted);
+            exchangeIdToExecution.remove(evicted.getExchangeID());
+        }
+        recent[slot] = execution;
+        recentRenders[slot] = null;
         exchangeIdToExecution.put(execution.getExchangeID(), execution);
+        count = row + 1;
+
+        rowsInserted(row, row);
+    }
 
-        fireTableRowsInserted(row, row);
+    private void spill(final Execution execution) {
+        spilled++;
+        if(spillThread == null) {
+            spillThread = new SpillThread(spillFile);
+            spillThread.start();
+        }
+        spillThread.submit(new Runnable() {
+            public void run() {
+                spillThread.append(execution);
+            }
+        });
+    }
+
+    public void close() {
+        if(spillThread != null)
+            spillThread.close();
     }
 
+    /**
+     *  @return an execution still held in memory, or null
+     */
     public Execution getExchangeExecution(String exchangeID) {
         return (Execution)exchangeIdToExecution.get(exchangeID);
     }
 
+    /**
+     *  @return the execution, or null if it has left memory and its
+     *  page has not been read back yet; the page is then requested
+     */
     public Execution getExecution(int row) {
-        return (Execution)rowToExecution.get(new Integer(row));
+        if(row < 0 || row >= count)
+            return null;
+        if(isRecent(row))
+            return recent[row % recent.length];
+        Page page = getPage(row);
+        return page == null ? null : page.executions[row % PAGE_ROWS];
+    }
+
+    public RowRenderState getRenderState(int row) {
+        if(row < 0 || row >= count)
+            return missing;
+        if(isRecent(row)) {
+            int slot = row % recent.length;
+            if(recentRenders[slot] == null)
+                recentRenders[slot] = render(row, recent[slot]);
+            return recentRenders[slot];
+        }
+        Page page = getPage(row);
+        if(page == null)
+            return missing;
+        int index = row % PAGE_ROWS;
+        if(page.renders[index] == null)
+            page.renders[index] = render(row, page.executions[index]);
+        return page.renders[index];
+    }
+
+    /**
+     *  @return the oldest announced row still in the ring
+     */
+    public int getFirstRow() {
+        return Math.max(0, getRowCount() - recent.length);
+    }
+
+    private boolean isRecent(int row) {
+        return row >= count - recent.length;
+    }
+
+    // a cached page is read again if rows have since been spilled into
+    // it; until a page is read its rows come back null
+    private Page getPage(int row) {
+        if(spillThread == null || row >= spilled)
+            return null;
+        final Integer index = new Integer(row / PAGE_ROWS);
+        Page page = (Page)pages.get(index);
+        if(page != null && row % PAGE_ROWS < page.size)
+            return page;
+        if(loading.add(index)) {
+            spillThread.submit(new Runnable() {
+                public void run() {
+                    final Page page = spillThread.read(index.intValue());
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            pageLoaded(index, page);
+                        }
+                    });
+                }
+            });
+        }
+        return null;
+    }
+
+    private void pageLoaded(Integer index, Page page) {
+        loading.remove(index);
+        if(page == null || page.size == 0)
+            return;
+        pages.put(index, page);
+        int first = index.intValue() * PAGE_ROWS;
+        rowsUpdated(first, first + page.size - 1);
+    }
+
+    private static class Page {
+        Execution[] executions = new Execution[PAGE_ROWS];
+        RowRenderState[] renders = new RowRenderState[PAGE_ROWS];
+        int size;
+    }
+
+    /**
+     *  Owns the spill file; appends and page reads run on it in the
+     *  order they were submitted.
+     */
+    private static class SpillThread extends Thread {
+        private BlockingQueue queue = new LinkedBlockingQueue();
+        private File file;
+        private ExecutionSpill spill = null;
+        private boolean failed = false;
+        private volatile boolean running = true;
+
+        SpillThread(File file) {
+            super("ExecutionSpill");
+            setDaemon(true);
+            this.file = file;
+        }
+
+        void submit(Runnable task) {
+            queue.add(task);
+        }
+
+        public void run() {
+            while(running) {
+                try {
+                    ((Runnable)queue.take()).run();
+                } catch(InterruptedException e) {
+                    break;
+                } catch(RuntimeException e) {
+                    System.out.println(e);
+                }
+            }
+        }
+
+        void append(Execution execution) {
+            if(failed)
+                return;
+            try {
+                if(spill == null) {
+                    if(file == null) {
+                        file = File.createTempFile("banzai", ".executions");
+                        file.deleteOnExit();
+                    }
+                    spill = new ExecutionSpill(file, PAGE_ROWS);
+                }
+                spill.append(execution);
+            } catch(IOException e) {
+                // rows older than the ring are shown blank from now on
+                System.out.println(e);
+                failed = true;
+            }
+        }
+
+        Page read(int index) {
+            if(spill == null)
+                return null;
+            Page page = new Page();
+            try {
+                page.size = spill.read(index * PAGE_ROWS, page.executions);
+            } catch(IOException e) {
+                System.out.println(e);
+                return null;
+            }
+            return page;
+        }
+
+        void close() {
+            submit(new Runnable() {
+                public void run() {
+                    running = false;
+                    if(spill != null)
+                        spill.close();
+                }
+            });
+        }
     }
 
     public void setValueAt(Object value, int rowIndex,
@@ -84,10 +321,6 @@ public class ExecutionTableModel extends AbstractTableModel {
         return String.class;
     }
 
-    public int getRowCount() {
-        return rowToExecution.size();
-    }
-
     public int getColumnCount() {
         return headers.length;
     }
@@ -97,19 +330,35 @@ public class ExecutionTableModel extends AbstractTableModel {
     }
 
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Execution execution = (Execution)rowToExecution.get
-                              (new Integer(rowIndex));
+        return getRenderState(rowIndex).getText(columnIndex);
+    }
 
-        switch(columnIndex) {
-        case SYMBOL:
-            return execution.getSymbol();
+    public Comparable getSortValue(int row, int column) {
+        Execution execution = getExecution(row);
+        if(execution == null)
+            return null;
+        switch(column) {
         case QUANTITY:
             return new Integer(execution.getQuantity());
-        case SIDE:
-            return execution.getSide();
         case PRICE:
             return new Double(execution.getPrice());
         }
-        return new String();
+        return super.getSortValue(row, column);
+    }
+
+    protected void refreshRow(int row) {
+        if(isRecent(row))
+            recentRenders[row % recent.length] =
+                render(row, recent[row % recent.length]);
+    }
+
+    private RowRenderState render(int row, Execution execution) {
+        RowRenderState render = new RowRenderState(headers.length);
+        render.setText(SYMBOL, execution.getSymbol());
+        render.setText(QUANTITY, Integer.toString(execution.getQuantity()));
+        render.setText(SIDE, execution.getSide());
+        render.setText(PRICE, Double.toString(execution.getPrice()));
+        render.setBackground(row % 2 == 0 ? Color.white : Color.lightGray);
+        return render;
     }
 }
@@ -0,0 +1,209 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import quickfix.Message;
+
+/**
+ *  Pulls a fixed set of tags out of a message with one call into the
+ *  engine instead of one getField call per tag.
+ *
+ *  The message is rendered once with toString(), which does allocate
+ *  a String of the whole message on each call; that one string stands
+ *  in for a field object and a call per tag.  The values of the
+ *  requested tags are copied as ASCII into a caller owned ByteBuffer
+ *  (normally direct) while their offsets and lengths are kept in
+ *  primitive arrays.  Values are addressed by slot, the position of the
+ *  tag in the list given to the constructor.  When a tag repeats, as
+ *  it can inside a repeating group, the first occurrence wins.
+ *
+ *  A field whose tag is not a plain number, or is larger than every
+ *  requested tag, is skipped up to the next SOH, as is text with no
+ *  '=' before the next SOH.  That
+ *  covers the pieces of a data field with an embedded SOH, though such
+ *  a piece that happens to read as a requested tag is taken as one.
+ *  Not thread safe.
+ */
+public class FieldExtractor {
+    private final static byte SOH = 1;
+
+    private int[] tags;
+    private int[] slots;
+    private int[] offsets;
+    private int[] lengths;
+    private ByteBuffer buffer;
+    private long[] powers = new long[19];
+
+    public FieldExtractor(int[] tags, ByteBuffer buffer) {
+        this.tags = (int[])tags.clone();
+        this.buffer = buffer;
+
+        int maxTag = 0;
+        for(int i = 0; i < tags.length; ++i)
+            maxTag = Math.max(maxTag, tags[i]);
+        slots = new int[maxTag + 1];
+        Arrays.fill(slots, -1);
+        for(int i = 0; i < tags.length; ++i)
+            slots[tags[i]] = i;
+        offsets = new int[tags.length];
+        lengths = new int[tags.length];
+
+        powers[0] = 1;
+        for(int i = 1; i < powers.length; ++i)
+            powers[i] = powers[i - 1] * 10;
+    }
+
+    public int getTag(int slot) {
+        return tags[slot];
+    }
+
+    /**
+     *  Extracts the requested tags from the message.  Returns false if
+     *  the buffer is too small for the values, or a value is not ASCII,
+     *  in which case no slot is set.
+     */
+    public boolean extract(Message message) {
+        return extract(message.toString());
+    }
+
+    public boolean extract(String text) {
+        Arrays.fill(lengths, -1);
+        buffer.clear();
+
+        int length = text.length();
+        int position = 0;
+        while(position < length) {
+            int tag = 0;
+            boolean known = false;
+            boolean valid = true;
+            char c;
+            while(position < length && (c = text.charAt(position)) != '='
+                    && c != SOH) {
+                // once past the largest tag, stop adding digits
+                if(c < '0' || c > '9' || tag >= slots.length) {
+                    valid = false;
+                } else {
+                    tag = tag * 10 + (c - '0');
+                    known = true;
+                }
+                position++;
+            }
+            // without an '=' this is no field at all
+            if(position++ == length || text.charAt(position - 1) == SOH)
+                continue;
+
+            int start = position;
+            while(position < length && text.charAt(position) != SOH)
+                position++;
+            int end = position++;
+
+            int slot = valid && known && tag < slots.length ? slots[tag] : -1;
+            if(slot < 0 || lengths[slot] >= 0)
+                continue;
+            if(buffer.remaining() < end - start) {
+                Arrays.fill(lengths, -1);
+                return false;
+            }
+            offsets[slot] = buffer.position();
+            lengths[slot] = end - start;
+            for(int i = start; i < end; ++i) {
+                char value = text.charAt(i);
+                if(value > 0x7f) {
+                    Arrays.fill(lengths, -1);
+                    return false;
+                }
+                buffer.put((byte)value);
+            }
+        }
+        return true;
+    }
+
+    public boolean isSet(int slot) {
+        return lengths[slot] >= 0;
+    }
+
+    public int length(int slot) {
+        return lengths[slot];
+    }
+
+    public char getChar(int slot) {
+        return lengths[slot] > 0 ? (char)buffer.get(offsets[slot]) : 0;
+    }
+
+    public String getString(int slot) {
+        int length = lengths[slot];
+        if(length < 0)
+            return null;
+        char[] chars = new char[length];
+        for(int i = 0; i < length; ++i)
+            chars[i] = (char)buffer.get(offsets[slot] + i);
+        return new String(chars);
+    }
+
+    public long getLong(int slot) {
+        int offset = offsets[slot];
+        int end = offset + lengths[slot];
+        boolean negative = offset < end && buffer.get(offset) == '-';
+        if(negative)
+            offset++;
+        long value = 0;
+        for(int i = offset; i < end; ++i)
+            value = value * 10 + (buffer.get(i) - '0');
+        return negative ? -value : value;
+    }
+
+    /**
+     *  Parses a FIX float without allocating.  Values with more than 18
+     *  significant digits lose the extra digits.
+     */
+    public double getDouble(int slot) {
+        int offset = offsets[slot];
+        int end = offset + lengths[slot];
+        boolean negative = offset < end && buffer.get(offset) == '-';
+        if(negative)
+            offset++;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for(int i = offset; i < end; ++i) {
+            byte b = buffer.get(i);
+            if(b == '.') {
+                fraction = true;
+                continue;
+            }
+            if(digits == 18) {
+                if(!fraction)
+                    scale--;
+                continue;
+            }
+            if(mantissa != 0 || b != '0')
+                digits++;
+            mantissa = mantissa * 10 + (b - '0');
+            if(fraction)
+                scale++;
+        }
+        double value = scale >= 0
+                       ? mantissa / (double)powers[Math.min(scale, 18)]
+                       : mantissa * (double)powers[Math.min(-scale, 18)];
+        return negative ? -value : value;
+    }
+}
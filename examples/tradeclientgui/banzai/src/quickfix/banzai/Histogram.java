@@ -0,0 +1,88 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Counts values in power of two buckets: bucket 0 holds zero and
+ *  bucket n holds values from 2^(n-1) up to 2^n - 1.  Recording is a
+ *  single atomic increment, so it is safe from any thread.
+ */
+public class Histogram {
+    private final static int BUCKETS = 64;
+
+    private String unit;
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public Histogram(String unit) {
+        this.unit = unit;
+    }
+
+    public void record(long value) {
+        int bucket = value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for(int i = 0; i < BUCKETS; ++i)
+            count += counts.get(i);
+        return count;
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     *  @return the upper bound of the bucket holding the percentile,
+     *  from 0 to 100
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if(count == 0)
+            return 0;
+        long rank = (long)Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if(seen >= rank && seen > 0)
+                return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0
+               : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public void clear() {
+        for(int i = 0; i < BUCKETS; ++i)
+            counts.set(i, 0);
+    }
+
+    public String toString() {
+        return "count=" + getCount()
+               + " p50<=" + getPercentile(50) + unit
+               + " p99<=" + getPercentile(99) + unit
+               + " max<=" + getPercentile(100) + unit;
+    }
+}
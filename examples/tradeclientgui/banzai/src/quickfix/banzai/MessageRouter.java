@@ -0,0 +1,182 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import quickfix.FieldNotFound;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.field.MsgType;
+
+/**
+ *  Dispatches inbound application messages to handlers registered by
+ *  MsgType and BeginString.
+ *
+ *  The handlers that apply to a session are resolved into a table the
+ *  first time the session delivers a message, so routing costs one
+ *  header read and an array lookup.  Messages without a handler are
+ *  dropped, and both outcomes are counted for each MsgType.
+ */
+public class MessageRouter {
+    public interface Handler {
+        void handle(Message message, SessionID sessionID)
+        throws FieldNotFound;
+    }
+
+    private static ThreadLocal msgTypes = new ThreadLocal() {
+        protected Object initialValue() {
+            return new MsgType();
+        }
+    };
+
+    private HashMap handlers = new HashMap();
+    private Map tables = Collections.synchronizedMap(new HashMap());
+    private TreeMap counters = new TreeMap();
+
+    /**
+     *  Registers a handler for one BeginString, or for every BeginString
+     *  if beginString is null.  A handler for a specific BeginString
+     *  takes precedence.  Register handlers before messages arrive.
+     */
+    public synchronized void register(String beginString, String msgType,
+                                      Handler handler) {
+        handlers.put(key(beginString, msgType), handler);
+        tables.clear();
+    }
+
+    public void route(Message message, SessionID sessionID)
+    throws FieldNotFound {
+        MsgType msgType = (MsgType)msgTypes.get();
+        message.getHeader().getField(msgType);
+        Route route = getTable(sessionID).get(msgType.getValue());
+        if(route.handler == null) {
+            route.counter.dropped.incrementAndGet();
+            return;
+        }
+        route.counter.received.incrementAndGet();
+        route.handler.handle(message, sessionID);
+    }
+
+    public long getReceived(String msgType) {
+        return getCounter(msgType).received.get();
+    }
+
+    public long getDropped(String msgType) {
+        return getCounter(msgType).dropped.get();
+    }
+
+    /**
+     *  Lists the MsgTypes seen so far with their received and dropped
+     *  counts.
+     */
+    public synchronized String toString() {
+        StringBuffer buffer = new StringBuffer();
+        Iterator i = counters.entrySet().iterator();
+        while(i.hasNext()) {
+            Map.Entry entry = (Map.Entry)i.next();
+            Counter counter = (Counter)entry.getValue();
+            buffer.append("35=").append(entry.getKey())
+            .append(" received=").append(counter.received.get())
+            .append(" dropped=").append(counter.dropped.get())
+            .append('\n');
+        }
+        return buffer.toString();
+    }
+
+    private Table getTable(SessionID sessionID) {
+        Table table = (Table)tables.get(sessionID);
+        if(table == null) {
+            table = new Table(sessionID.getBeginString());
+            tables.put(sessionID, table);
+        }
+        return table;
+    }
+
+    private synchronized Route resolve(String beginString, String msgType) {
+        Handler handler = (Handler)handlers.get(key(beginString, msgType));
+        if(handler == null)
+            handler = (Handler)handlers.get(key(null, msgType));
+        return new Route(handler, getCounter(msgType));
+    }
+
+    private synchronized Counter getCounter(String msgType) {
+        Counter counter = (Counter)counters.get(msgType);
+        if(counter == null) {
+            counter = new Counter();
+            counters.put(msgType, counter);
+        }
+        return counter;
+    }
+
+    private static String key(String beginString, String msgType) {
+        return (beginString == null ? "*" : beginString) + ":" + msgType;
+    }
+
+    private static class Counter {
+        AtomicLong received = new AtomicLong();
+        AtomicLong dropped = new AtomicLong();
+    }
+
+    private static class Route {
+        Handler handler;
+        Counter counter;
+
+        Route(Handler handler, Counter counter) {
+            this.handler = handler;
+            this.counter = counter;
+        }
+    }
+
+    /**
+     *  Routes for one session.  Single character MsgTypes, which is
+     *  most of them, index an array; longer ones go through a map.
+     *  Routes are filled in as new MsgTypes arrive.
+     */
+    private class Table {
+        private String beginString;
+        private Route[] single = new Route[128];
+        private HashMap multiple = new HashMap();
+
+        Table(String beginString) {
+            this.beginString = beginString;
+        }
+
+        synchronized Route get(String msgType) {
+            if(msgType.length() == 1 && msgType.charAt(0) < single.length) {
+                Route route = single[msgType.charAt(0)];
+                if(route == null) {
+                    route = resolve(beginString, msgType);
+                    single[msgType.charAt(0)] = route;
+                }
+                return route;
+            }
+            Route route = (Route)multiple.get(msgType);
+            if(route == null) {
+                route = resolve(beginString, msgType);
+                multiple.put(msgType, route);
+            }
+            return route;
+        }
+    }
+}
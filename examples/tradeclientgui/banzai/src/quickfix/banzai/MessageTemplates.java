@@ -0,0 +1,182 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.HashMap;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.field.BeginString;
+import quickfix.field.CxlType;
+import quickfix.field.HandlInst;
+import quickfix.field.SenderCompID;
+import quickfix.field.TargetCompID;
+import quickfix.field.TransactTime;
+
+/**
+ *  Pre-built outbound messages holding every field that never changes.
+ *
+ *  There is one prototype for each FIX version and message type, and
+ *  each session takes its own copy with its header filled in the first
+ *  time it asks.  A send copies the session's prototype and sets only
+ *  the fields of the order.
+ *
+ *  TransactTime comes from a TransactTimeClock with millisecond
+ *  precision.  FIXT.1.1 sessions with TransactTimeMicros=Y send
+ *  microseconds instead; older versions do not allow them.
+ */
+public class MessageTemplates {
+    public final static String TRANSACT_TIME_MICROS = "TransactTimeMicros";
+
+    public final static int FIX40 = 0;
+    public final static int FIX41 = 1;
+    public final static int FIX42 = 2;
+    public final static int FIX43 = 3;
+    public final static int FIX44 = 4;
+    public final static int FIX50 = 5;
+
+    public final static int NEW_ORDER_SINGLE = 0;
+    public final static int ORDER_CANCEL_REQUEST = 1;
+    public final static int ORDER_CANCEL_REPLACE_REQUEST = 2;
+    public final static int ORDER_MASS_CANCEL_REQUEST = 3;
+
+    private final static int TYPES = 4;
+    private static Message[] prototypes = new Message[6 * TYPES];
+
+    private BanzaiSettings settings;
+    private HashMap sessions = new HashMap();
+
+    public MessageTemplates(SessionSettings settings) {
+        this.settings = new BanzaiSettings(settings);
+    }
+
+    /**
+     *  @return a copy of the session's prototype of the message type
+     *  for the FIX version, or null if the version has no such message
+     */
+    public Message copy(SessionID sessionID, int version, int type) {
+        Templates templates = getTemplates(sessionID);
+        int index = version * TYPES + type;
+        Message prototype;
+        if(prototypes[index] == null)
+            return null;
+        synchronized(templates) {
+            prototype = templates.prototypes[index];
+            if(prototype == null) {
+                prototype = (Message)prototypes[index].clone();
+                Message.Header header = prototype.getHeader();
+                header.setString(BeginString.FIELD,
+                                 sessionID.getBeginString());
+                header.setString(SenderCompID.FIELD,
+                                 sessionID.getSenderCompID());
+                header.setString(TargetCompID.FIELD,
+                                 sessionID.getTargetCompID());
+                templates.prototypes[index] = prototype;
+            }
+        }
+        return (Message)prototype.clone();
+    }
+
+    public void setTransactTime(Message message, SessionID sessionID) {
+        message.setString(TransactTime.FIELD, getTemplates(sessionID).micros
+                          ? TransactTimeClock.micros()
+                          : TransactTimeClock.millis());
+    }
+
+    private synchronized Templates getTemplates(SessionID sessionID) {
+        Templates templates = (Templates)sessions.get(sessionID);
+        if(templates == null) {
+            templates = new Templates();
+            templates.micros = sessionID.getBeginString().equals("FIXT.1.1")
+                               && settings.getBool
+                               (sessionID, TRANSACT_TIME_MICROS, false);
+            sessions.put(sessionID, templates);
+        }
+        return templates;
+    }
+
+    private static class Templates {
+        Message[] prototypes = new Message[6 * TYPES];
+        boolean micros;
+    }
+
+    private static void prototype(int version, int type, Message message) {
+        prototypes[version * TYPES + type] = message;
+    }
+
+    static {
+        prototype(FIX40, NEW_ORDER_SINGLE,
+                  new quickfix.fix40.NewOrderSingle());
+        prototype(FIX41, NEW_ORDER_SINGLE,
+                  new quickfix.fix41.NewOrderSingle());
+        prototype(FIX42, NEW_ORDER_SINGLE,
+                  new quickfix.fix42.NewOrderSingle());
+        prototype(FIX43, NEW_ORDER_SINGLE,
+                  new quickfix.fix43.NewOrderSingle());
+        prototype(FIX44, NEW_ORDER_SINGLE,
+                  new quickfix.fix44.NewOrderSingle());
+        prototype(FIX50, NEW_ORDER_SINGLE,
+                  new quickfix.fix50.NewOrderSingle());
+
+        prototype(FIX40, ORDER_CANCEL_REQUEST,
+                  new quickfix.fix40.OrderCancelRequest());
+        prototype(FIX41, ORDER_CANCEL_REQUEST,
+                  new quickfix.fix41.OrderCancelRequest());
+        prototype(FIX42, ORDER_CANCEL_REQUEST,
+                  new quickfix.fix42.OrderCancelRequest());
+        prototype(FIX43, ORDER_CANCEL_REQUEST,
+                  new quickfix.fix43.OrderCancelRequest());
+        prototype(FIX44, ORDER_CANCEL_REQUEST,
+                  new quickfix.fix44.OrderCancelRequest());
+        prototype(FIX50, ORDER_CANCEL_REQUEST,
+                  new quickfix.fix50.OrderCancelRequest());
+
+        prototype(FIX40, ORDER_CANCEL_REPLACE_REQUEST,
+                  new quickfix.fix40.OrderCancelReplaceRequest());
+        prototype(FIX41, ORDER_CANCEL_REPLACE_REQUEST,
+                  new quickfix.fix41.OrderCancelReplaceRequest());
+        prototype(FIX42, ORDER_CANCEL_REPLACE_REQUEST,
+                  new quickfix.fix42.OrderCancelReplaceRequest());
+        prototype(FIX43, ORDER_CANCEL_REPLACE_REQUEST,
+                  new quickfix.fix43.OrderCancelReplaceRequest());
+        prototype(FIX44, ORDER_CANCEL_REPLACE_REQUEST,
+                  new quickfix.fix44.OrderCancelReplaceRequest());
+        prototype(FIX50, ORDER_CANCEL_REPLACE_REQUEST,
+                  new quickfix.fix50.OrderCancelReplaceRequest());
+
+        // OrderMassCancelRequest arrived with FIX.4.3
+        prototype(FIX43, ORDER_MASS_CANCEL_REQUEST,
+                  new quickfix.fix43.OrderMassCancelRequest());
+        prototype(FIX44, ORDER_MASS_CANCEL_REQUEST,
+                  new quickfix.fix44.OrderMassCancelRequest());
+        prototype(FIX50, ORDER_MASS_CANCEL_REQUEST,
+                  new quickfix.fix50.OrderMassCancelRequest());
+
+        // every order is automated execution, private
+        for(int version = FIX40; version <= FIX50; ++version) {
+            prototypes[version * TYPES + NEW_ORDER_SINGLE]
+            .setChar(HandlInst.FIELD, '1');
+            prototypes[version * TYPES + ORDER_CANCEL_REPLACE_REQUEST]
+            .setChar(HandlInst.FIELD, '1');
+        }
+        // full cancel, the only kind FIX.4.0 has
+        prototypes[FIX40 * TYPES + ORDER_CANCEL_REQUEST]
+        .setChar(CxlType.FIELD, 'F');
+    }
+}
@@ -0,0 +1,100 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import quickfix.SessionID;
+
+/**
+ *  Open orders by session and symbol, kept up to date as orders are
+ *  sent and finish, so finding the orders to cancel never means
+ *  scanning the order table.
+ */
+public class OpenOrderIndex {
+    private HashMap sessions = new HashMap();
+    private int size = 0;
+
+    public synchronized void add(Order order) {
+        HashMap symbols = (HashMap)sessions.get(order.getSessionID());
+        if(symbols == null) {
+            symbols = new HashMap();
+            sessions.put(order.getSessionID(), symbols);
+        }
+        LinkedHashSet orders = (LinkedHashSet)symbols.get(order.getSymbol());
+        if(orders == null) {
+            orders = new LinkedHashSet();
+            symbols.put(order.getSymbol(), orders);
+        }
+        if(orders.add(order))
+            size++;
+    }
+
+    public synchronized void remove(Order order) {
+        HashMap symbols = (HashMap)sessions.get(order.getSessionID());
+        if(symbols == null)
+            return;
+        LinkedHashSet orders = (LinkedHashSet)symbols.get(order.getSymbol());
+        if(orders == null || !orders.remove(order))
+            return;
+        size--;
+        if(orders.isEmpty())
+            symbols.remove(order.getSymbol());
+    }
+
+    /**
+     *  @param symbol null for every symbol
+     *  @param side null for both sides
+     *  @return the session's open orders, oldest first within a symbol
+     */
+    public synchronized List getOrders(SessionID sessionID, String symbol,
+                                       OrderSide side) {
+        ArrayList result = new ArrayList();
+        HashMap symbols = (HashMap)sessions.get(sessionID);
+        if(symbols == null)
+            return result;
+        if(symbol != null) {
+            addOrders((LinkedHashSet)symbols.get(symbol), side, result);
+        } else {
+            Iterator i = symbols.values().iterator();
+            while(i.hasNext())
+                addOrders((LinkedHashSet)i.next(), side, result);
+        }
+        return result;
+    }
+
+    private static void addOrders(LinkedHashSet orders, OrderSide side,
+                                  ArrayList result) {
+        if(orders == null)
+            return;
+        Iterator i = orders.iterator();
+        while(i.hasNext()) {
+            Order order = (Order)i.next();
+            if(side == null || order.getSide() == side)
+                result.add(order);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
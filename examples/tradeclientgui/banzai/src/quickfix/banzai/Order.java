@@ -37,20 +37,61 @@ public class Order implements Cloneable {
     private boolean canceled = false;
     private boolean isNew = true;
     private String message = null;
-    private String ID = null;
+    private volatile String ID = null;
     private String originalID = null;
-    private static int nextID = 1;
+    private static OrderIDGenerator idGenerator = new ClOrdIDGenerator();
 
-    public Order() {
-        ID = generateID();
-    }
+    // once attached, quantities, prices and flags live in the store
+    private OrderStateStore store = null;
+    private int slot = -1;
+
+    /**
+     *  The ID is generated when first asked for, so that it can carry
+     *  the prefix of the session set in the meantime.
+     */
+    public Order() {}
     public Order(String ID) {
         this.ID = ID;
     }
 
+    /**
+     *  Recovers the order held in a slot of the store.
+     */
+    Order(OrderStateStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+        sessionID = store.getSessionID(slot);
+        symbol = store.getSymbol(slot);
+        side = store.getSide(slot);
+        type = store.getType(slot);
+        tif = store.getTIF(slot);
+        ID = store.getID(slot);
+    }
+
+    /**
+     *  Moves the order's state into a slot of the store.  The order is
+     *  left on the heap if the store is full or its ID, symbol or
+     *  session do not fit.
+     */
+    public boolean attach(OrderStateStore store) {
+        if(this.store != null)
+            return true;
+        int slot = store.allocate(this);
+        if(slot < 0)
+            return false;
+        this.slot = slot;
+        this.store = store;
+        return true;
+    }
+    public boolean isAttached() {
+        return store != null;
+    }
+
     public Object clone() {
         try {
             Order order = (Order)super.clone();
+            if(store != null)
+                order.detach();
             order.setOriginalID(getID());
             order.setID(order.generateID());
             return order;
@@ -58,106 +99,193 @@ public class Order implements Cloneable {
         return null;
     }
 
+    // an order whose ID, symbol or session no longer fits its slot
+    // goes back to the heap and gives the slot up
+    private void release() {
+        OrderStateStore store = this.store;
+        int slot = this.slot;
+        detach();
+        store.remove(slot);
+    }
+
+    // a clone starts out on the heap with the state it was cloned from
+    private void detach() {
+        quantity = store.getQuantity(slot);
+        open = store.getOpen(slot);
+        executed = store.getExecuted(slot);
+        avgPx = store.getAvgPx(slot);
+        limit = getLimit();
+        stop = getStop();
+        rejected = store.getRejected(slot);
+        canceled = store.getCanceled(slot);
+        isNew = store.isNew(slot);
+        store = null;
+        slot = -1;
+    }
+
+    public static void setIDGenerator(OrderIDGenerator generator) {
+        idGenerator = generator;
+    }
+    public static OrderIDGenerator getIDGenerator() {
+        return idGenerator;
+    }
+
     public String generateID() {
-        return new Integer(nextID++).toString();
+        return idGenerator.nextID(sessionID);
     }
     public SessionID getSessionID() {
         return sessionID;
     }
     public void setSessionID(SessionID sessionID) {
         this.sessionID = sessionID;
+        if(store != null && !store.setSessionID(slot, sessionID))
+            release();
     }
     public String getSymbol() {
         return symbol;
     }
     public void setSymbol(String symbol) {
         this.symbol = symbol;
+        if(store != null && !store.setSymbol(slot, symbol))
+            release();
     }
     public int getQuantity() {
-        return quantity;
+        return store == null ? quantity : store.getQuantity(slot);
     }
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
+        if(store == null)
+            this.quantity = quantity;
+        else
+            store.setQuantity(slot, quantity);
     }
     public int getOpen() {
-        return open;
+        return store == null ? open : store.getOpen(slot);
     }
     public void setOpen(int open) {
-        this.open = open;
+        if(store == null)
+            this.open = open;
+        else
+            store.setOpen(slot, open);
     }
     public int getExecuted() {
-        return executed;
+        return store == null ? executed : store.getExecuted(slot);
     }
     public void setExecuted(int executed) {
-        this.executed = executed;
+        if(store == null)
+            this.executed = executed;
+        else
+            store.setExecuted(slot, executed);
     }
     public OrderSide getSide() {
         return side;
     }
     public void setSide(OrderSide side) {
         this.side = side;
+        if(store != null)
+            store.setSide(slot, side);
     }
     public OrderType getType() {
         return type;
     }
     public void setType(OrderType type) {
         this.type = type;
+        if(store != null)
+            store.setType(slot, type);
     }
     public OrderTIF getTIF() {
         return tif;
     }
     public void setTIF(OrderTIF tif) {
         this.tif = tif;
+        if(store != null)
+            store.setTIF(slot, tif);
     }
     public Double getLimit() {
-        return limit;
+        if(store == null)
+            return limit;
+        double value = store.getLimit(slot);
+        return Double.isNaN(value) ? null : new Double(value);
+    }
+    /**
+     *  @return the limit price without boxing it, NaN if there is none
+     */
+    public double getLimitPrice() {
+        if(store == null)
+            return limit == null ? Double.NaN : limit.doubleValue();
+        return store.getLimit(slot);
     }
     public void setLimit(Double limit) {
-        this.limit = limit;
+        if(store == null)
+            this.limit = limit;
+        else
+            store.setLimit(slot, limit);
     }
     public void setLimit(String limit) {
         if(limit == "" || limit == null) {
-            this.limit = null;
+            setLimit((Double)null);
         } else {
-            this.limit = new Double(limit);
+            setLimit(new Double(limit));
         }
     }
     public Double getStop() {
-        return stop;
+        if(store == null)
+            return stop;
+        double value = store.getStop(slot);
+        return Double.isNaN(value) ? null : new Double(value);
+    }
+    public double getStopPrice() {
+        if(store == null)
+            return stop == null ? Double.NaN : stop.doubleValue();
+        return store.getStop(slot);
     }
     public void setStop(Double stop) {
-        this.stop = stop;
+        if(store == null)
+            this.stop = stop;
+        else
+            store.setStop(slot, stop);
     }
     public void setStop(String stop) {
         if(stop == "" || stop == null) {
-            this.stop = null;
+            setStop((Double)null);
         } else {
-            this.stop = new Double(stop);
+            setStop(new Double(stop));
         }
     }
     public void setAvgPx(double avgPx) {
-        this.avgPx = avgPx;
+        if(store == null)
+            this.avgPx = avgPx;
+        else
+            store.setAvgPx(slot, avgPx);
     }
     public double getAvgPx() {
-        return avgPx;
+        return store == null ? avgPx : store.getAvgPx(slot);
     }
     public void setRejected(boolean rejected) {
-        this.rejected = rejected;
+        if(store == null)
+            this.rejected = rejected;
+        else
+            store.setRejected(slot, rejected);
     }
     public boolean getRejected() {
-        return rejected;
+        return store == null ? rejected : store.getRejected(slot);
     }
     public void setCanceled(boolean canceled) {
-        this.canceled = canceled;
+        if(store == null)
+            this.canceled = canceled;
+        else
+            store.setCanceled(slot, canceled);
     }
     public boolean getCanceled() {
-        return canceled;
+        return store == null ? canceled : store.getCanceled(slot);
     }
     public void setNew(boolean isNew) {
-        this.isNew = isNew;
+        if(store == null)
+            this.isNew = isNew;
+        else
+            store.setNew(slot, isNew);
     }
     public boolean isNew() {
-        return isNew;
+        return store == null ? isNew : store.isNew(slot);
     }
     public void setMessage(String message) {
         this.message = message;
@@ -165,10 +293,20 @@ public class Order implements Cloneable {
     public String getMessage() {
         return message;
     }
-    public void setID(String ID) {
+    public synchronized void setID(String ID) {
         this.ID = ID;
+        if(store != null && !store.setID(slot, ID))
+            release();
     }
     public String getID() {
+        String ID = this.ID;
+        if(ID == null) {
+            synchronized(this) {
+                ID = this.ID;
+                if(ID == null)
+                    this.ID = ID = generateID();
+            }
+        }
         return ID;
     }
     public void setOriginalID(String originalID) {
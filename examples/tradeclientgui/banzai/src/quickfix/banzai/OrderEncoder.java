@@ -0,0 +1,166 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.field.ClOrdID;
+import quickfix.field.MassCancelRequestType;
+import quickfix.field.OrderQty;
+import quickfix.field.OrigClOrdID;
+import quickfix.field.Price;
+import quickfix.field.StopPx;
+import quickfix.field.Symbol;
+
+/**
+ *  Builds the outbound order messages of one FIX version.
+ *
+ *  A session is bound to the encoder of its version when it is
+ *  created or logs on, so sending needs no BeginString comparison.
+ *  Each version copies its own prototypes from MessageTemplates;
+ *  the layouts differ in whether TransactTime is sent (FIX.4.2 on)
+ *  and in FIX.4.0 requiring OrderQty on every replace.
+ */
+public class OrderEncoder {
+    private BanzaiApplication application;
+    private MessageTemplates templates;
+    private int version;
+    private boolean transactTime;
+    private boolean replaceQuantity;
+
+    OrderEncoder(BanzaiApplication application, MessageTemplates templates,
+                 int version) {
+        this.application = application;
+        this.templates = templates;
+        this.version = version;
+        this.transactTime = version >= MessageTemplates.FIX42;
+        this.replaceQuantity = version == MessageTemplates.FIX40;
+    }
+
+    /**
+     *  @return the MessageTemplates version constant
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public Message newOrderSingle(Order order) {
+        Message message = copy(order.getSessionID(),
+                               MessageTemplates.NEW_ORDER_SINGLE);
+
+        message.setString(ClOrdID.FIELD, order.getID());
+        message.setString(Symbol.FIELD, order.getSymbol());
+        message.setField(application.sideToFIXSide(order.getSide()));
+        message.setDouble(OrderQty.FIELD, order.getQuantity());
+        message.setField(application.typeToFIXType(order.getType()));
+
+        OrderType type = order.getType();
+
+        if(type == OrderType.LIMIT)
+            message.setDouble(Price.FIELD, order.getLimitPrice());
+        else if(type == OrderType.STOP)
+            message.setDouble(StopPx.FIELD, order.getStopPrice());
+        else if(type == OrderType.STOP_LIMIT) {
+            message.setDouble(Price.FIELD, order.getLimitPrice());
+            message.setDouble(StopPx.FIELD, order.getStopPrice());
+        }
+
+        message.setField(application.tifToFIXTif(order.getTIF()));
+        return message;
+    }
+
+    /**
+     *  @param id the ClOrdID of the cancel request
+     */
+    public Message orderCancelRequest(Order order, String id) {
+        Message message = copy(order.getSessionID(),
+                               MessageTemplates.ORDER_CANCEL_REQUEST);
+
+        message.setString(OrigClOrdID.FIELD, order.getID());
+        message.setString(ClOrdID.FIELD, id);
+        message.setString(Symbol.FIELD, order.getSymbol());
+        message.setField(application.sideToFIXSide(order.getSide()));
+        message.setDouble(OrderQty.FIELD, order.getQuantity());
+        return message;
+    }
+
+    public Message orderCancelReplaceRequest(Order order, Order newOrder) {
+        return orderCancelReplaceRequest(order, order.getID(), newOrder);
+    }
+
+    /**
+     *  @param origID the ClOrdID the order is known by at the venue,
+     *  which may be ahead of the order's own while a replace settles
+     */
+    public Message orderCancelReplaceRequest(Order order, String origID,
+                                             Order newOrder) {
+        Message message = copy(order.getSessionID(),
+                               MessageTemplates.ORDER_CANCEL_REPLACE_REQUEST);
+
+        message.setString(OrigClOrdID.FIELD, origID);
+        message.setString(ClOrdID.FIELD, newOrder.getID());
+        message.setString(Symbol.FIELD, order.getSymbol());
+        message.setField(application.sideToFIXSide(order.getSide()));
+        message.setField(application.typeToFIXType(order.getType()));
+
+        if(replaceQuantity || order.getQuantity() != newOrder.getQuantity())
+            message.setDouble(OrderQty.FIELD, newOrder.getQuantity());
+        // compared by value, as attached orders box a new Double each time
+        double limit = newOrder.getLimitPrice();
+        if(Double.compare(order.getLimitPrice(), limit) != 0
+                && !Double.isNaN(limit))
+            message.setDouble(Price.FIELD, limit);
+        return message;
+    }
+
+    /**
+     *  @param symbol null to cancel orders for every symbol
+     *  @param side null to cancel orders on both sides
+     *  @return null before FIX.4.3, which has no mass cancel
+     */
+    public Message orderMassCancelRequest(SessionID sessionID, String id,
+                                          String symbol, OrderSide side) {
+        Message message = copy(sessionID,
+                               MessageTemplates.ORDER_MASS_CANCEL_REQUEST);
+        if(message == null)
+            return null;
+
+        message.setString(ClOrdID.FIELD, id);
+        if(symbol != null) {
+            message.setChar(MassCancelRequestType.FIELD,
+                            MassCancelRequestType.CANCEL_ORDERS_FOR_A_SECURITY);
+            message.setString(Symbol.FIELD, symbol);
+        } else {
+            message.setChar(MassCancelRequestType.FIELD,
+                            MassCancelRequestType.CANCEL_ALL_ORDERS);
+        }
+        if(side != null)
+            message.setField(application.sideToFIXSide(side));
+        return message;
+    }
+
+    private Message copy(SessionID sessionID, int type) {
+        Message message = templates.copy(sessionID, version, type);
+        if(message == null)
+            return null;
+        if(transactTime)
+            templates.setTransactTime(message, sessionID);
+        return message;
+    }
+}
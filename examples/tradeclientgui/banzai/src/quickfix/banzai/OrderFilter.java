@@ -0,0 +1,72 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import quickfix.SessionID;
+
+/**
+ *  Filters the order blotter by symbol, session and status, read from
+ *  each row's latest OrderSnapshot.  Statuses are bits that can be
+ *  combined.
+ */
+public class OrderFilter implements BlotterView.Filter {
+    public final static int PENDING = 1;
+    public final static int WORKING = 2;
+    public final static int FILLED = 4;
+    public final static int CANCELED = 8;
+    public final static int REJECTED = 16;
+    public final static int ALL = 31;
+
+    private String symbol;
+    private SessionID sessionID;
+    private int statuses;
+
+    /**
+     *  @param symbol null for every symbol
+     *  @param sessionID null for every session
+     *  @param statuses the statuses shown
+     */
+    public OrderFilter(String symbol, SessionID sessionID, int statuses) {
+        this.symbol = symbol;
+        this.sessionID = sessionID;
+        this.statuses = statuses;
+    }
+
+    public boolean include(CoalescingTableModel model, int row) {
+        OrderSnapshot order = ((OrderTableModel)model).getSnapshot(row);
+        if(symbol != null && !symbol.equals(order.getSymbol()))
+            return false;
+        if(sessionID != null && !sessionID.equals(order.getSessionID()))
+            return false;
+        return (statuses & getStatus(order)) != 0;
+    }
+
+    // the same reading of an order as the blotter's row colors
+    public static int getStatus(OrderSnapshot order) {
+        if(order.getRejected())
+            return REJECTED;
+        if(order.getCanceled())
+            return CANCELED;
+        if(order.getOpen() == 0 && order.getExecuted() == 0)
+            return PENDING;
+        if(order.getOpen() > 0)
+            return WORKING;
+        return FILLED;
+    }
+}
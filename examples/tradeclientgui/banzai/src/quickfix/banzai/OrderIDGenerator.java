@@ -0,0 +1,33 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import quickfix.SessionID;
+
+/**
+ *  Source of ClOrdIDs for new orders, cancels and replaces.  Must be
+ *  safe to call from any thread.
+ */
+public interface OrderIDGenerator {
+    /**
+     *  @param sessionID the session the ID will be sent on, or null if
+     *  it is not known yet
+     */
+    String nextID(SessionID sessionID);
+}
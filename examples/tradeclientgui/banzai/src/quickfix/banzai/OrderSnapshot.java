@@ -0,0 +1,123 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.concurrent.atomic.AtomicLong;
+import quickfix.SessionID;
+
+/**
+ *  Immutable copy of an order, taken by the thread that changed it once
+ *  it is consistent again.  The Swing models render from the latest
+ *  snapshot of each order rather than from the order itself, so they
+ *  never see a report half applied.
+ *
+ *  Snapshots are numbered in the order they are taken; a model keeps
+ *  the newest one it has been given.
+ */
+public final class OrderSnapshot {
+    private static AtomicLong versions = new AtomicLong();
+
+    private final long version;
+    private final String id;
+    private final String symbol;
+    private final int quantity;
+    private final int open;
+    private final int executed;
+    private final OrderSide side;
+    private final OrderType type;
+    private final Double limit;
+    private final Double stop;
+    private final double avgPx;
+    private final boolean rejected;
+    private final boolean canceled;
+    private final SessionID sessionID;
+    private final String targetCompID;
+
+    public OrderSnapshot(Order order) {
+        this(order, order.getID());
+    }
+
+    /**
+     *  @param id the ClOrdID the order goes by as of this snapshot
+     */
+    public OrderSnapshot(Order order, String id) {
+        version = versions.incrementAndGet();
+        this.id = id;
+        symbol = order.getSymbol();
+        quantity = order.getQuantity();
+        open = order.getOpen();
+        executed = order.getExecuted();
+        side = order.getSide();
+        type = order.getType();
+        limit = order.getLimit();
+        stop = order.getStop();
+        avgPx = order.getAvgPx();
+        rejected = order.getRejected();
+        canceled = order.getCanceled();
+        sessionID = order.getSessionID();
+        targetCompID = sessionID == null ? null
+                       : sessionID.getTargetCompID();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+    public String getID() {
+        return id;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public int getQuantity() {
+        return quantity;
+    }
+    public int getOpen() {
+        return open;
+    }
+    public int getExecuted() {
+        return executed;
+    }
+    public OrderSide getSide() {
+        return side;
+    }
+    public OrderType getType() {
+        return type;
+    }
+    public Double getLimit() {
+        return limit;
+    }
+    public Double getStop() {
+        return stop;
+    }
+    public double getAvgPx() {
+        return avgPx;
+    }
+    public boolean getRejected() {
+        return rejected;
+    }
+    public boolean getCanceled() {
+        return canceled;
+    }
+    public SessionID getSessionID() {
+        return sessionID;
+    }
+    public String getTargetCompID() {
+        return targetCompID;
+    }
+}
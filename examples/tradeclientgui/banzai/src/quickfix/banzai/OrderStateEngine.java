@@ -0,0 +1,242 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import quickfix.SessionID;
+
+/**
+ *  Applies inbound application messages to order state off the Swing
+ *  thread, and hands the Swing models the changed rows at most once
+ *  per frame.  The engine is the only frame clock: its flush also
+ *  fires the models' own pending changes, such as rows added from the
+ *  Swing thread, so the tables repaint once per frame.
+ *
+ *  Work is partitioned by session across a pool of worker threads.
+ *  Each session is bound to one worker the first time it submits, so
+ *  its messages keep their order while independent sessions proceed
+ *  in parallel.
+ */
+public class OrderStateEngine {
+    public final static int DEFAULT_FRAME_RATE = 30;
+
+    private OrderTableModel orderTableModel;
+    private ExecutionTableModel executionTableModel;
+    private BanzaiApplication.ObservableOrder observableOrder;
+    private long frameNanos;
+    private Worker[] workers;
+    private HashMap partitions = new HashMap();
+    private int nextPartition = 0;
+    private volatile boolean running = false;
+
+    private Object lock = new Object();
+    private LinkedHashMap pendingOrders = new LinkedHashMap();
+    private ArrayList pendingExecutions = new ArrayList();
+    private LinkedHashMap flushingOrders = new LinkedHashMap();
+    private ArrayList flushingExecutions = new ArrayList();
+    private boolean flushScheduled = false;
+    private boolean modelsChanged = false;
+    private long lastFlush = 0;
+    private Runnable flush = new Flush();
+
+    public OrderStateEngine(OrderTableModel orderTableModel,
+                            ExecutionTableModel executionTableModel,
+                            BanzaiApplication.ObservableOrder observableOrder,
+                            int frameRate, int threads) {
+        this.orderTableModel = orderTableModel;
+        this.executionTableModel = executionTableModel;
+        this.observableOrder = observableOrder;
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / frameRate;
+        workers = new Worker[Math.max(1, threads)];
+        for(int i = 0; i < workers.length; ++i)
+            workers[i] = new Worker(i);
+        Runnable modelChanged = new Runnable() {
+            public void run() {
+                synchronized(lock) {
+                    modelsChanged = true;
+                }
+            }
+        };
+        orderTableModel.setChangeListener(modelChanged);
+        executionTableModel.setChangeListener(modelChanged);
+    }
+
+    public synchronized void start() {
+        if(running)
+            return;
+        running = true;
+        lastFlush = System.nanoTime();
+        for(int i = 0; i < workers.length; ++i)
+            workers[i].start();
+    }
+
+    public synchronized void stop() {
+        if(!running)
+            return;
+        running = false;
+        for(int i = 0; i < workers.length; ++i)
+            workers[i].interrupt();
+        try {
+            for(int i = 0; i < workers.length; ++i)
+                workers[i].join(1000);
+        } catch(InterruptedException e) {}
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     *  Queues a task on the worker that owns the session.
+     */
+    public void submit(SessionID sessionID, Runnable task) {
+        getWorker(sessionID).queue.add(task);
+    }
+
+    private Worker getWorker(SessionID sessionID) {
+        synchronized(partitions) {
+            Worker worker = (Worker)partitions.get(sessionID);
+            if(worker == null) {
+                worker = workers[nextPartition];
+                nextPartition = (nextPartition + 1) % workers.length;
+                partitions.put(sessionID, worker);
+            }
+            return worker;
+        }
+    }
+
+    /**
+     *  Called once an order has been modified, by the thread that
+     *  modified it, which snapshots the order for the Swing models.
+     *  Repeated updates of the same order within a frame collapse
+     *  into one row update carrying the latest snapshot.
+     */
+    void orderUpdated(Order order, String id) {
+        OrderSnapshot snapshot = new OrderSnapshot(order, id);
+        synchronized(lock) {
+            pendingOrders.put(order, snapshot);
+        }
+    }
+
+    void executionAdded(Execution execution) {
+        synchronized(lock) {
+            pendingExecutions.add(execution);
+        }
+    }
+
+    private long waitNanos() {
+        synchronized(lock) {
+            if(flushScheduled || !hasPending())
+                return frameNanos;
+            long remaining = lastFlush + frameNanos - System.nanoTime();
+            return remaining > 0 ? remaining : 0;
+        }
+    }
+
+    private void publish() {
+        synchronized(lock) {
+            if(flushScheduled || !hasPending())
+                return;
+            long now = System.nanoTime();
+            if(now - lastFlush < frameNanos)
+                return;
+            lastFlush = now;
+            flushScheduled = true;
+        }
+        SwingUtilities.invokeLater(flush);
+    }
+
+    // a worker idle for a frame picks up changes made to the models
+    private boolean hasPending() {
+        return modelsChanged || !pendingOrders.isEmpty()
+               || !pendingExecutions.isEmpty();
+    }
+
+    private class Worker extends Thread {
+        private BlockingQueue queue = new LinkedBlockingQueue();
+
+        Worker(int index) {
+            super("OrderStateEngine-" + index);
+            setDaemon(true);
+        }
+
+        public void run() {
+            while(running) {
+                try {
+                    Runnable task = (Runnable)queue.poll
+                                    (waitNanos(), TimeUnit.NANOSECONDS);
+                    if(task != null)
+                        task.run();
+                    publish();
+                } catch(InterruptedException e) {
+                    break;
+                } catch(RuntimeException e) {
+                    System.out.println(e);
+                }
+            }
+        }
+    }
+
+    private class Flush implements Runnable {
+        public void run() {
+            synchronized(lock) {
+                LinkedHashMap orders = pendingOrders;
+                pendingOrders = flushingOrders;
+                flushingOrders = orders;
+                ArrayList executions = pendingExecutions;
+                pendingExecutions = flushingExecutions;
+                flushingExecutions = executions;
+            }
+
+            Iterator i = flushingOrders.entrySet().iterator();
+            while(i.hasNext()) {
+                Map.Entry entry = (Map.Entry)i.next();
+                OrderSnapshot snapshot = (OrderSnapshot)entry.getValue();
+                orderTableModel.updateOrder((Order)entry.getKey(), snapshot);
+                observableOrder.update(snapshot);
+            }
+            for(int j = 0; j < flushingExecutions.size(); ++j) {
+                executionTableModel.addExecution
+                ((Execution)flushingExecutions.get(j));
+            }
+            flushingOrders.clear();
+            flushingExecutions.clear();
+
+            // changes made after this are announced to the listener again
+            synchronized(lock) {
+                modelsChanged = false;
+            }
+            orderTableModel.flush();
+            executionTableModel.flush();
+
+            synchronized(lock) {
+                flushScheduled = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import quickfix.SessionID;
+
+/**
+ *  Off heap order state kept in primitive columns of a memory mapped
+ *  file.  An Order attached to the store becomes a view of one slot,
+ *  so quantities, prices and status live outside the heap and can be
+ *  read back from the file after a crash.
+ *
+ *  Each slot also holds the ClOrdID, symbol and session in fixed width
+ *  ASCII fields (31, 15 and 63 characters), enough to rebuild the
+ *  order.  An order whose fields do not fit is refused and stays on
+ *  the heap; one that stops fitting is removed from its slot.  A slot
+ *  is counted in the header only once it is fully written.
+ *
+ *  When the UTC day changes the store keeps only the orders that are
+ *  still open and not DAY orders, moved to the front of the columns.
+ *  Each move is noted in the header before the slot is copied and
+ *  cleared once its source is marked removed, so a compaction the
+ *  process died in is finished the next time the file is opened.
+ *
+ *  Enabled with OrderStateStore=Y in the default section, which also
+ *  needs a FileStorePath; OrderStateCapacity bounds the orders kept.
+ */
+public class OrderStateStore {
+    public final static String STORE = "OrderStateStore";
+    public final static String STORE_CAPACITY = "OrderStateCapacity";
+    public final static String STATE_FILE = "orders.state";
+
+    public final static int DEFAULT_CAPACITY = 1 << 16;
+
+    private final static long MAGIC_VALUE = 0x4f52444552533031L;
+    private final static long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private final static int HEADER = 64;
+
+    private final static int MAGIC = 0;
+    private final static int CAPACITY = 8;
+    private final static int COUNT = 12;
+    private final static int DAY = 16;
+    // the slot being moved plus one, or 0, and where it goes
+    private final static int MOVE_FROM = 24;
+    private final static int MOVE_TO = 28;
+
+    private final static int ID_WIDTH = 32;
+    private final static int SYMBOL_WIDTH = 16;
+    private final static int SESSION_WIDTH = 64;
+
+    private final static int REJECTED = 1;
+    private final static int CANCELED = 2;
+    private final static int NEW = 4;
+    private final static int REMOVED = 8;
+
+    private ByteBuffer buffer;
+    private int capacity;
+    private int count;
+    // writes compaction may still make
+    private int steps;
+
+    private int quantity;
+    private int open;
+    private int executed;
+    private int flags;
+    private int avgPx;
+    private int limit;
+    private int stop;
+    private int id;
+    private int symbol;
+    private int session;
+
+    public OrderStateStore(File file, int capacity) throws IOException {
+        this(file, capacity, System.currentTimeMillis() / DAY_MILLIS,
+             Integer.MAX_VALUE);
+    }
+
+    /**
+     *  @param today days since the epoch
+     *  @param steps the writes compaction makes before stopping as if
+     *  the process had died
+     */
+    OrderStateStore(File file, int capacity, long today, int steps)
+    throws IOException {
+        this.capacity = capacity;
+        quantity = HEADER;
+        open = quantity + 4 * capacity;
+        executed = open + 4 * capacity;
+        flags = executed + 4 * capacity;
+        avgPx = flags + 4 * capacity;
+        limit = avgPx + 8 * capacity;
+        stop = limit + 8 * capacity;
+        id = stop + 8 * capacity;
+        symbol = id + ID_WIDTH * capacity;
+        session = symbol + SYMBOL_WIDTH * capacity;
+        int length = session + SESSION_WIDTH * capacity;
+
+        if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if(raf.length() != length)
+                raf.setLength(length);
+            buffer = raf.getChannel().map
+                     (FileChannel.MapMode.READ_WRITE, 0, length)
+                     .order(ByteOrder.nativeOrder());
+        } finally {
+            raf.close();
+        }
+
+        if(buffer.getLong(MAGIC) == MAGIC_VALUE
+                && buffer.getInt(CAPACITY) == capacity) {
+            count = buffer.getInt(COUNT);
+            if(buffer.getLong(DAY) != today && compact(steps))
+                buffer.putLong(DAY, today);
+        } else {
+            count = 0;
+            buffer.putInt(COUNT, 0);
+            buffer.putInt(MOVE_FROM, 0);
+            buffer.putInt(CAPACITY, capacity);
+            buffer.putLong(DAY, today);
+            buffer.putLong(MAGIC, MAGIC_VALUE);
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // moves the open orders that outlive the day over the slots of the
+    // rest, after finishing a move left by a compaction that stopped;
+    // returns whether it got to the end
+    private boolean compact(int steps) {
+        this.steps = steps;
+        int pending = buffer.getInt(MOVE_FROM);
+        if(pending != 0 && !move(pending - 1, buffer.getInt(MOVE_TO)))
+            return false;
+        int kept = 0;
+        for(int slot = 0; slot < count; ++slot) {
+            if(getFlag(slot, REMOVED) || !isCarriedOver(slot))
+                continue;
+            if(slot != kept && !move(slot, kept))
+                return false;
+            kept++;
+        }
+        if(!step())
+            return false;
+        count = kept;
+        buffer.putInt(COUNT, count);
+        return true;
+    }
+
+    // the source is only marked removed once the copy is whole, and
+    // the move is forgotten only after that, so it is safe to redo
+    private boolean move(int from, int to) {
+        if(!step())
+            return false;
+        buffer.putInt(MOVE_TO, to);
+        buffer.putInt(MOVE_FROM, from + 1);
+        if(!copySlot(from, to) || !step())
+            return false;
+        setFlag(to, REMOVED, false);
+        if(!step())
+            return false;
+        setFlag(from, REMOVED, true);
+        if(!step())
+            return false;
+        buffer.putInt(MOVE_FROM, 0);
+        return true;
+    }
+
+    private boolean step() {
+        return steps-- > 0;
+    }
+
+    private boolean isCarriedOver(int slot) {
+        return getTIF(slot) != OrderTIF.DAY
+               && !getRejected(slot) && !getCanceled(slot)
+               && getExecuted(slot) < getQuantity(slot);
+    }
+
+    private boolean copySlot(int from, int to) {
+        return copy(quantity, 4, from, to)
+               && copy(open, 4, from, to)
+               && copy(executed, 4, from, to)
+               && copy(flags, 4, from, to)
+               && copy(avgPx, 8, from, to)
+               && copy(limit, 8, from, to)
+               && copy(stop, 8, from, to)
+               && copy(id, ID_WIDTH, from, to)
+               && copy(symbol, SYMBOL_WIDTH, from, to)
+               && copy(session, SESSION_WIDTH, from, to);
+    }
+
+    private boolean copy(int column, int width, int from, int to) {
+        if(!step())
+            return false;
+        for(int i = 0; i < width; ++i)
+            buffer.put(column + width * to + i,
+                       buffer.get(column + width * from + i));
+        return true;
+    }
+
+    /**
+     *  @return whether the order's ID, symbol and session fit their
+     *  fields
+     */
+    public static boolean fits(Order order) {
+        return fits(order.getID(), ID_WIDTH)
+               && fits(order.getSymbol(), SYMBOL_WIDTH)
+               && fits(sessionText(order.getSessionID()), SESSION_WIDTH);
+    }
+
+    /**
+     *  Copies the order's state into a new slot and returns it, or
+     *  returns -1 if the store is full or the order does not fit.
+     */
+    public synchronized int allocate(Order order) {
+        if(count == capacity || !fits(order))
+            return -1;
+        int slot = count;
+        setQuantity(slot, order.getQuantity());
+        setOpen(slot, order.getOpen());
+        setExecuted(slot, order.getExecuted());
+        setAvgPx(slot, order.getAvgPx());
+        setLimit(slot, order.getLimit());
+        setStop(slot, order.getStop());
+        setFlag(slot, REJECTED, order.getRejected());
+        setFlag(slot, CANCELED, order.getCanceled());
+        setFlag(slot, NEW, order.isNew());
+        setSide(slot, order.getSide());
+        setType(slot, order.getType());
+        setTIF(slot, order.getTIF());
+        setID(slot, order.getID());
+        setSymbol(slot, order.getSymbol());
+        setSessionID(slot, order.getSessionID());
+        count = slot + 1;
+        buffer.putInt(COUNT, count);
+        return slot;
+    }
+
+    /**
+     *  Gives up a slot whose order has moved back to the heap.  The slot
+     *  is not reused until the day changes.
+     */
+    public void remove(int slot) {
+        setFlag(slot, REMOVED, true);
+    }
+
+    /**
+     *  Rebuilds the orders held in the store, attached to their slots.
+     */
+    public List recover() {
+        int size = size();
+        List orders = new ArrayList(size);
+        for(int slot = 0; slot < size; ++slot) {
+            if(!getFlag(slot, REMOVED))
+                orders.add(new Order(this, slot));
+        }
+        return orders;
+    }
+
+    public int getQuantity(int slot) {
+        return buffer.getInt(quantity + 4 * slot);
+    }
+    public void setQuantity(int slot, int value) {
+        buffer.putInt(quantity + 4 * slot, value);
+    }
+    public int getOpen(int slot) {
+        return buffer.getInt(open + 4 * slot);
+    }
+    public void setOpen(int slot, int value) {
+        buffer.putInt(open + 4 * slot, value);
+    }
+    public int getExecuted(int slot) {
+        return buffer.getInt(executed + 4 * slot);
+    }
+    public void setExecuted(int slot, int value) {
+        buffer.putInt(executed + 4 * slot, value);
+    }
+    public double getAvgPx(int slot) {
+        return buffer.getDouble(avgPx + 8 * slot);
+    }
+    public void setAvgPx(int slot, double value) {
+        buffer.putDouble(avgPx + 8 * slot, value);
+    }
+
+    /**
+     *  @return the limit price, or NaN if the order has none
+     */
+    public double getLimit(int slot) {
+        return buffer.getDouble(limit + 8 * slot);
+    }
+    public void setLimit(int slot, Double value) {
+        buffer.putDouble(limit + 8 * slot,
+                         value == null ? Double.NaN : value.doubleValue());
+    }
+    public double getStop(int slot) {
+        return buffer.getDouble(stop + 8 * slot);
+    }
+    public void setStop(int slot, Double value) {
+        buffer.putDouble(stop + 8 * slot,
+                         value == null ? Double.NaN : value.doubleValue());
+    }
+
+    public boolean getRejected(int slot) {
+        return getFlag(slot, REJECTED);
+    }
+    public void setRejected(int slot, boolean value) {
+        setFlag(slot, REJECTED, value);
+    }
+    public boolean getCanceled(int slot) {
+        return getFlag(slot, CANCELED);
+    }
+    public void setCanceled(int slot, boolean value) {
+        setFlag(slot, CANCELED, value);
+    }
+    public boolean isNew(int slot) {
+        return getFlag(slot, NEW);
+    }
+    public void setNew(int slot, boolean value) {
+        setFlag(slot, NEW, value);
+    }
+
+    // side, type and TIF are kept as indexes into their toArray() in
+    // the second, third and fourth bytes of the flags
+    public OrderSide getSide(int slot) {
+        return (OrderSide)OrderSide.toArray()[getByte(slot, 8)];
+    }
+    public void setSide(int slot, OrderSide value) {
+        setByte(slot, 8, indexOf(OrderSide.toArray(), value));
+    }
+    public OrderType getType(int slot) {
+        return (OrderType)OrderType.toArray()[getByte(slot, 16)];
+    }
+    public void setType(int slot, OrderType value) {
+        setByte(slot, 16, indexOf(OrderType.toArray(), value));
+    }
+    public OrderTIF getTIF(int slot) {
+        return (OrderTIF)OrderTIF.toArray()[getByte(slot, 24)];
+    }
+    public void setTIF(int slot, OrderTIF value) {
+        setByte(slot, 24, indexOf(OrderTIF.toArray(), value));
+    }
+
+    public String getID(int slot) {
+        return getString(id + ID_WIDTH * slot, ID_WIDTH);
+    }
+    public boolean setID(int slot, String value) {
+        return putString(id + ID_WIDTH * slot, ID_WIDTH, value);
+    }
+    public String getSymbol(int slot) {
+        return getString(symbol + SYMBOL_WIDTH * slot, SYMBOL_WIDTH);
+    }
+    public boolean setSymbol(int slot, String value) {
+        return putString(symbol + SYMBOL_WIDTH * slot, SYMBOL_WIDTH, value);
+    }
+
+    public SessionID getSessionID(int slot) {
+        String value = getString(session + SESSION_WIDTH * slot,
+                                 SESSION_WIDTH);
+        if(value == null)
+            return null;
+        String[] parts = value.split("\\|", -1);
+        if(parts.length < 3)
+            return null;
+        return parts.length > 3 && parts[3].length() > 0
+               ? new SessionID(parts[0], parts[1], parts[2], parts[3])
+               : new SessionID(parts[0], parts[1], parts[2]);
+    }
+    public boolean setSessionID(int slot, SessionID value) {
+        return putString(session + SESSION_WIDTH * slot, SESSION_WIDTH,
+                         sessionText(value));
+    }
+
+    private static String sessionText(SessionID value) {
+        if(value == null)
+            return null;
+        String qualifier = value.getSessionQualifier();
+        return value.getBeginString() + "|" + value.getSenderCompID()
+               + "|" + value.getTargetCompID() + "|"
+               + (qualifier == null ? "" : qualifier);
+    }
+
+    private boolean getFlag(int slot, int flag) {
+        return (buffer.getInt(flags + 4 * slot) & flag) != 0;
+    }
+
+    private void setFlag(int slot, int flag, boolean value) {
+        int offset = flags + 4 * slot;
+        int bits = buffer.getInt(offset);
+        buffer.putInt(offset, value ? bits | flag : bits & ~flag);
+    }
+
+    private int getByte(int slot, int shift) {
+        return (buffer.getInt(flags + 4 * slot) >>> shift) & 0xff;
+    }
+
+    private void setByte(int slot, int shift, int value) {
+        int offset = flags + 4 * slot;
+        int bits = buffer.getInt(offset) & ~(0xff << shift);
+        buffer.putInt(offset, bits | ((value & 0xff) << shift));
+    }
+
+    private static int indexOf(Object[] array, Object value) {
+        for(int i = 0; i < array.length; ++i) {
+            if(array[i] == value)
+                return i;
+        }
+        return 0;
+    }
+
+    // the first byte holds the length; 255 marks null
+    private String getString(int offset, int width) {
+        int length = buffer.get(offset) & 0xff;
+        if(length == 0xff)
+            return null;
+        char[] chars = new char[length];
+        for(int i = 0; i < length; ++i)
+            chars[i] = (char)(buffer.get(offset + 1 + i) & 0xff);
+        return new String(chars);
+    }
+
+    // a value that is too long or not ASCII is left unwritten
+    private boolean putString(int offset, int width, String value) {
+        if(value == null) {
+            buffer.put(offset, (byte)0xff);
+            return true;
+        }
+        if(!fits(value, width))
+            return false;
+        int length = value.length();
+        for(int i = 0; i < length; ++i)
+            buffer.put(offset + 1 + i, (byte)value.charAt(i));
+        buffer.put(offset, (byte)length);
+        return true;
+    }
+
+    private static boolean fits(String value, int width) {
+        if(value == null)
+            return true;
+        if(value.length() > width - 1)
+            return false;
+        for(int i = 0; i < value.length(); ++i) {
+            if(value.charAt(i) > 0x7f)
+                return false;
+        }
+        return true;
+    }
+}
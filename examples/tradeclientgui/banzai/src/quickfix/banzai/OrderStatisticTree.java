@@ -0,0 +1,203 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.Random;
+
+/**
+ *  Balanced tree of table rows kept in an order decided by a
+ *  RowComparator, which also answers which row is nth and where a row
+ *  stands, each in O(log n).
+ *
+ *  Rows are their own nodes, so the tree is a handful of int arrays
+ *  indexed by row.  It is a treap: nodes carry random priorities and
+ *  are joined and split by key, each node knowing its parent and the
+ *  size of its subtree.  A row's key must not change while it is in
+ *  the tree; remove it, change it, then insert it again.
+ */
+public class OrderStatisticTree {
+    public interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    private RowComparator comparator;
+    private Random random = new Random();
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    private int[] parent = new int[0];
+    private int[] size = new int[0];
+    private int[] priority = new int[0];
+    private boolean[] present = new boolean[0];
+    private int root = -1;
+
+    // the two halves of the last split
+    private int lessRoot;
+    private int moreRoot;
+
+    public OrderStatisticTree(RowComparator comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return root < 0 ? 0 : size[root];
+    }
+
+    public boolean contains(int row) {
+        return row < present.length && present[row];
+    }
+
+    public void clear() {
+        for(int i = 0; i < present.length; ++i)
+            present[i] = false;
+        root = -1;
+    }
+
+    public void insert(int row) {
+        if(contains(row))
+            return;
+        ensureCapacity(row + 1);
+        left[row] = -1;
+        right[row] = -1;
+        size[row] = 1;
+        priority[row] = random.nextInt();
+        present[row] = true;
+        split(root, row, false);
+        int more = moreRoot;
+        root = merge(merge(lessRoot, row), more);
+        parent[root] = -1;
+    }
+
+    public void remove(int row) {
+        if(!contains(row))
+            return;
+        split(root, row, false);
+        int less = lessRoot;
+        split(moreRoot, row, true);
+        root = merge(less, moreRoot);
+        if(root >= 0)
+            parent[root] = -1;
+        present[row] = false;
+    }
+
+    /**
+     *  @return the row at the position
+     */
+    public int select(int index) {
+        int node = root;
+        while(node >= 0) {
+            int before = sizeOf(left[node]);
+            if(index < before) {
+                node = left[node];
+            } else if(index == before) {
+                return node;
+            } else {
+                index -= before + 1;
+                node = right[node];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *  @return the position of the row, or -1 if it is not in the tree
+     */
+    public int rank(int row) {
+        if(!contains(row))
+            return -1;
+        int rank = sizeOf(left[row]);
+        int node = row;
+        while(parent[node] >= 0) {
+            int up = parent[node];
+            if(right[up] == node)
+                rank += sizeOf(left[up]) + 1;
+            node = up;
+        }
+        return rank;
+    }
+
+    private void ensureCapacity(int rows) {
+        if(rows <= present.length)
+            return;
+        int capacity = Math.max(rows, Math.max(16, present.length * 2));
+        left = grow(left, capacity);
+        right = grow(right, capacity);
+        parent = grow(parent, capacity);
+        size = grow(size, capacity);
+        priority = grow(priority, capacity);
+        boolean[] grown = new boolean[capacity];
+        System.arraycopy(present, 0, grown, 0, present.length);
+        present = grown;
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private int sizeOf(int node) {
+        return node < 0 ? 0 : size[node];
+    }
+
+    private void pull(int node) {
+        size[node] = 1 + sizeOf(left[node]) + sizeOf(right[node]);
+        if(left[node] >= 0)
+            parent[left[node]] = node;
+        if(right[node] >= 0)
+            parent[right[node]] = node;
+    }
+
+    // splits into the nodes before the row, and the rest; the row
+    // itself goes with those before it when inclusive
+    private void split(int node, int row, boolean inclusive) {
+        if(node < 0) {
+            lessRoot = -1;
+            moreRoot = -1;
+            return;
+        }
+        int order = comparator.compare(node, row);
+        if(order < 0 || (inclusive && order == 0)) {
+            split(right[node], row, inclusive);
+            right[node] = lessRoot;
+            pull(node);
+            lessRoot = node;
+        } else {
+            split(left[node], row, inclusive);
+            left[node] = moreRoot;
+            pull(node);
+            moreRoot = node;
+        }
+    }
+
+    // every node of the first comes before every node of the second
+    private int merge(int first, int second) {
+        if(first < 0)
+            return second;
+        if(second < 0)
+            return first;
+        if(priority[first] > priority[second]) {
+            right[first] = merge(right[first], second);
+            pull(first);
+            return first;
+        }
+        left[second] = merge(first, left[second]);
+        pull(second);
+        return second;
+    }
+}
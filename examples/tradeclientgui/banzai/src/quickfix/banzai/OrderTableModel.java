@@ -21,12 +21,29 @@ package quickfix.banzai;
 
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
-import javax.swing.table.AbstractTableModel;
+import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.Comparator;
-import java.util.HashMap;
 
-public class OrderTableModel extends AbstractTableModel {
+/**
+ *  Orders are held in an array indexed by row, with a ClOrdIDIndex
+ *  from every ClOrdID an order has gone by to its row.  Rows are only
+ *  added on the Swing thread; lookups by ID may come from any thread.
+ *
+ *  Every ClOrdID of a cancel/replace chain maps straight to the row of
+ *  the order that started it, however long the chain.  Each row keeps
+ *  its chain so that retiring a finished order drops all its IDs.
+ *
+ *  Rows are announced to the table once per frame, and each row's cell
+ *  text and status color are worked out then rather than on every
+ *  repaint.  They are worked out from the row's latest OrderSnapshot,
+ *  never from the order itself, which other threads change in place.
+ *  Snapshots are published under the lock but read without it.
+ */
+public class OrderTableModel extends CoalescingTableModel {
 
     private final static int SYMBOL = 0;
     private final static int QUANTITY = 1;
@@ -39,17 +56,25 @@ public class OrderTableModel extends AbstractTableModel {
     private final static int AVGPX = 8;
     private final static int TARGET = 9;
 
-    private HashMap rowToOrder;
-    private HashMap idToRow;
-    private HashMap idToOrder;
+    private Order[] rows;
+    private int rowCount = 0;
+    private ClOrdIDIndex idToRow;
+    private ArrayList[] chains;
+    private volatile AtomicReferenceArray snapshots;
+    private RowRenderState[] renders;
+    private IdentityHashMap orderToRow = new IdentityHashMap();
+    private Object lock = new Object();
+    private OrderStateStore stateStore = null;
 
     private String[] headers;
     private Class[] classes;
 
     public OrderTableModel() {
-        rowToOrder = new HashMap();
-        idToRow = new HashMap();
-        idToOrder = new HashMap();
+        rows = new Order[1024];
+        chains = new ArrayList[1024];
+        snapshots = new AtomicReferenceArray(1024);
+        renders = new RowRenderState[1024];
+        idToRow = new ClOrdIDIndex(1024);
 
         headers = new String[]
                   {"Symbol", "Quantity", "Open", "Executed",
@@ -61,55 +86,141 @@ public class OrderTableModel extends AbstractTableModel {
         return false;
     }
 
+    /**
+     *  Orders added from now on keep their state in the store.
+     */
+    public void setStateStore(OrderStateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
     public void addOrder(Order order) {
-        int row = rowToOrder.size();
+        if(stateStore != null)
+            order.attach(stateStore);
+        int row;
+        synchronized(lock) {
+            row = rowCount;
+            if(row == rows.length) {
+                Order[] grown = new Order[rows.length * 2];
+                System.arraycopy(rows, 0, grown, 0, row);
+                rows = grown;
+                ArrayList[] grownChains = new ArrayList[chains.length * 2];
+                System.arraycopy(chains, 0, grownChains, 0, row);
+                chains = grownChains;
+                AtomicReferenceArray grownSnapshots =
+                    new AtomicReferenceArray(rows.length);
+                for(int i = 0; i < row; ++i)
+                    grownSnapshots.set(i, snapshots.get(i));
+                snapshots = grownSnapshots;
+            }
+            rows[row] = order;
+            publish(row, new OrderSnapshot(order));
+            chains[row] = new ArrayList(2);
+            link(order.getID(), row);
+            orderToRow.put(order, new Integer(row));
+            rowCount = row + 1;
+        }
 
-        rowToOrder.put(new Integer(row), order);
-        idToRow.put(order.getID(), new Integer(row));
-        idToOrder.put(order.getID(), order);
+        rowsInserted(row, row);
+    }
 
-        fireTableRowsInserted(row, row);
+    /**
+     *  Moves the order's row on to a snapshot taken since it last
+     *  changed.  Only the row is touched; the order itself was brought
+     *  up to date by the thread that took the snapshot.
+     */
+    public void updateOrder(Order order, OrderSnapshot snapshot) {
+        int row;
+        synchronized(lock) {
+            Integer index = (Integer)orderToRow.get(order);
+            if(index == null)
+                return;
+            row = index.intValue();
+            publish(row, snapshot);
+        }
+        rowsUpdated(row, row);
     }
 
-    public void updateOrder(Order order, String id) {
+    public void replaceOrder(Order order, String originalID) {
 
-        if(!id.equals(order.getID())) {
-            String originalID = order.getID();
-            order.setID(id);
-            replaceOrder(order, originalID);
-            return;
+        int row;
+        synchronized(lock) {
+            row = idToRow.get(originalID);
+            if(row < 0)
+                return;
+            Order previous = rows[row];
+            if(previous != order) {
+                orderToRow.remove(previous);
+                orderToRow.put(order, new Integer(row));
+            }
+            rows[row] = order;
+            link(order.getID(), row);
+            publish(row, new OrderSnapshot(order));
         }
 
-        Integer row = (Integer)idToRow.get(order.getID());
-        if(row == null)
-            return;
-        fireTableRowsUpdated(row.intValue(), row.intValue());
+        rowsUpdated(row, row);
     }
 
-    public void replaceOrder(Order order, String originalID) {
+    /**
+     *  Makes the order reachable under another ClOrdID, such as the one
+     *  of a pending cancel or replace.
+     */
+    public void addID(Order order, String newID) {
+        synchronized(lock) {
+            Integer row = (Integer)orderToRow.get(order);
+            if(row != null && chains[row.intValue()] != null)
+                link(newID, row.intValue());
+        }
+    }
 
-        Integer row = (Integer)idToRow.get(originalID);
-        if(row == null)
-            return;
+    /**
+     *  Forgets every ClOrdID of a finished order's chain.  The row stays;
+     *  reports quoting any of the IDs no longer find the order.
+     */
+    public void retire(Order order) {
+        synchronized(lock) {
+            Integer index = (Integer)orderToRow.get(order);
+            if(index == null)
+                return;
+            int row = index.intValue();
+            ArrayList chain = chains[row];
+            if(chain == null)
+                return;
+            for(int i = 0; i < chain.size(); ++i)
+                idToRow.remove((String)chain.get(i));
+            chains[row] = null;
+        }
+    }
 
-        rowToOrder.put(row, order);
-        idToRow.put(order.getID(), row);
-        idToOrder.put(order.getID(), order);
+    // callers hold the lock; an older snapshot never replaces a newer one
+    private void publish(int row, OrderSnapshot snapshot) {
+        OrderSnapshot current = (OrderSnapshot)snapshots.get(row);
+        if(current == null || current.getVersion() < snapshot.getVersion())
+            snapshots.set(row, snapshot);
+    }
 
-        fireTableRowsUpdated(row.intValue(), row.intValue());
+    // callers hold the lock
+    private void link(String id, int row) {
+        if(idToRow.get(id) == row)
+            return;
+        idToRow.put(id, row);
+        chains[row].add(id);
     }
 
-    public void addID(Order order, String newID) {
-        idToOrder.put(newID, order);
+    public int getRow(String id) {
+        synchronized(lock) {
+            return idToRow.get(id);
+        }
     }
 
     public Order getOrder(String id) {
-        Order order = (Order)idToOrder.get(id);
-        return order;
+        synchronized(lock) {
+            int row = idToRow.get(id);
+            return row < 0 ? null : rows[row];
+        }
     }
 
     public Order getOrder(int row) {
-        return (Order)rowToOrder.get(new Integer(row));
+        return row < rowCount ? rows[row] : null;
     }
 
     public void setValueAt(Object value, int rowIndex,
@@ -119,10 +230,6 @@ public class OrderTableModel extends AbstractTableModel {
         return String.class;
     }
 
-    public int getRowCount() {
-        return rowToOrder.size();
-    }
-
     public int getColumnCount() {
         return headers.length;
     }
@@ -132,29 +239,79 @@ public class OrderTableModel extends AbstractTableModel {
     }
 
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Order order = (Order)rowToOrder.get(new Integer(rowIndex));
-        switch(columnIndex) {
-        case SYMBOL:
-            return order.getSymbol();
+        return renders[rowIndex].getText(columnIndex);
+    }
+
+    /**
+     *  @return how the row looks as of the last frame
+     */
+    public RowRenderState getRenderState(int row) {
+        return renders[row];
+    }
+
+    /**
+     *  @return the latest snapshot of the row's order
+     */
+    public OrderSnapshot getSnapshot(int row) {
+        return (OrderSnapshot)snapshots.get(row);
+    }
+
+    public Comparable getSortValue(int row, int column) {
+        OrderSnapshot order = getSnapshot(row);
+        switch(column) {
         case QUANTITY:
             return new Integer(order.getQuantity());
         case OPEN:
             return new Integer(order.getOpen());
         case EXECUTED:
             return new Integer(order.getExecuted());
-        case SIDE:
-            return order.getSide();
-        case TYPE:
-            return order.getType();
         case LIMITPRICE:
             return order.getLimit();
         case STOPPRICE:
             return order.getStop();
         case AVGPX:
             return new Double(order.getAvgPx());
-        case TARGET:
-            return order.getSessionID().getTargetCompID();
         }
-        return new String();
+        return super.getSortValue(row, column);
+    }
+
+    // renders are only touched on the Swing thread
+    protected void refreshRow(int row) {
+        if(row >= renders.length) {
+            RowRenderState[] grown =
+                new RowRenderState[Math.max(row + 1, renders.length * 2)];
+            System.arraycopy(renders, 0, grown, 0, renders.length);
+            renders = grown;
+        }
+        RowRenderState render = renders[row];
+        if(render == null) {
+            render = new RowRenderState(headers.length);
+            renders[row] = render;
+        }
+
+        OrderSnapshot order = getSnapshot(row);
+        int open = order.getOpen();
+        int executed = order.getExecuted();
+        render.setText(SYMBOL, order.getSymbol());
+        render.setText(QUANTITY, Integer.toString(order.getQuantity()));
+        render.setText(OPEN, Integer.toString(open));
+        render.setText(EXECUTED, Integer.toString(executed));
+        render.setText(SIDE, order.getSide());
+        render.setText(TYPE, order.getType());
+        render.setText(LIMITPRICE, order.getLimit());
+        render.setText(STOPPRICE, order.getStop());
+        render.setText(AVGPX, Double.toString(order.getAvgPx()));
+        render.setText(TARGET, order.getTargetCompID());
+
+        if(order.getRejected())
+            render.setBackground(Color.red);
+        else if(order.getCanceled())
+            render.setBackground(Color.white);
+        else if(open == 0 && executed == 0)
+            render.setBackground(Color.yellow);
+        else if(open > 0)
+            render.setBackground(Color.green);
+        else
+            render.setBackground(Color.white);
     }
 }
@@ -0,0 +1,373 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+import quickfix.Message;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+
+/**
+ *  Sends outbound messages from a dedicated thread for each session,
+ *  so callers never wait on the engine's session lock or socket.
+ *
+ *  Each session has a bounded queue of OutboundQueueSize messages.
+ *  OutboundQueuePolicy decides what happens when it is full: Block
+ *  waits for room, Reject fails the new message and DropOldest fails
+ *  the oldest queued message to make room.  The Swing thread, and
+ *  callers that ask not to wait, are never made to wait; under Block
+ *  they are rejected instead.
+ *
+ *  MaxMessagesPerSecond paces a session's sender with a token bucket
+ *  holding up to MessageBurst messages (by default one, so messages
+ *  are evenly spaced), so traffic beyond the venue's rate waits in the
+ *  queue rather than being sent.  Messages the engine sends itself,
+ *  session level ones such as heartbeats and application messages it
+ *  resends with PossDupFlag set, are charged to the same bucket
+ *  through charge, so queued messages make room for them; they are
+ *  never delayed.  Each session keeps histograms of the
+ *  queue depth seen by new messages and of the microseconds messages
+ *  spend queued.
+ *
+ *  Every message offered gets exactly one callback, from the sender
+ *  thread or from the caller when it is refused.
+ */
+public class OutboundQueue {
+    public final static String QUEUE_SIZE = "OutboundQueueSize";
+    public final static String QUEUE_POLICY = "OutboundQueuePolicy";
+    public final static String MAX_MESSAGES_PER_SECOND =
+        "MaxMessagesPerSecond";
+    public final static String MESSAGE_BURST = "MessageBurst";
+    public final static int DEFAULT_QUEUE_SIZE = 1024;
+
+    public interface Callback {
+        void sent(SessionID sessionID, Message message);
+        void failed(SessionID sessionID, Message message, String reason);
+    }
+
+    public static class Policy {
+        static private Map known = new HashMap();
+        static public final Policy BLOCK = new Policy("Block");
+        static public final Policy REJECT = new Policy("Reject");
+        static public final Policy DROP_OLDEST = new Policy("DropOldest");
+        private String name;
+
+        private Policy(String name) {
+            this.name = name;
+            synchronized(Policy.class) {
+                known.put(name, this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String toString() {
+            return name;
+        }
+
+        public static Policy parse(String policy)
+        throws IllegalArgumentException {
+            Policy result = (Policy)known.get(policy);
+            if(result == null) {
+                throw new IllegalArgumentException
+                ("Policy:  " + policy + " is unknown.");
+            }
+            return result;
+        }
+    }
+
+    private BanzaiSettings settings;
+    private HashMap senders = new HashMap();
+    private boolean running = true;
+
+    public OutboundQueue(SessionSettings settings) {
+        this.settings = new BanzaiSettings(settings);
+    }
+
+    /**
+     *  Queues the message for the session.
+     *
+     *  @return false if the message was refused, in which case its
+     *  callback has already been told
+     */
+    public boolean offer(SessionID sessionID, Message message,
+                         Callback callback) {
+        return offer(sessionID, message, callback, true);
+    }
+
+    /**
+     *  @param wait whether a full queue under Block may make the caller
+     *  wait for room
+     */
+    public boolean offer(SessionID sessionID, Message message,
+                         Callback callback, boolean wait) {
+        Sender sender = getSender(sessionID);
+        if(sender == null) {
+            callback.failed(sessionID, message, "Outbound queue stopped");
+            return false;
+        }
+        return sender.offer(new Entry(message, callback), wait);
+    }
+
+    /**
+     *  Queues a group of messages for the session in one call, each
+     *  with the callback at the same index.  Each message is subject
+     *  to the queue's policy as if offered on its own.
+     *
+     *  @return how many messages were queued
+     */
+    public int offerAll(SessionID sessionID, Message[] messages,
+                        Callback[] callbacks) {
+        Sender sender = getSender(sessionID);
+        int queued = 0;
+        for(int i = 0; i < messages.length; ++i) {
+            if(sender == null)
+                callbacks[i].failed(sessionID, messages[i],
+                                    "Outbound queue stopped");
+            else if(sender.offer(new Entry(messages[i], callbacks[i]), true))
+                queued++;
+        }
+        return queued;
+    }
+
+    /**
+     *  Takes a token for a message sent around the queue.  Does nothing
+     *  for a session that is not paced or has not queued a message.
+     */
+    public void charge(SessionID sessionID) {
+        Sender sender = findSender(sessionID);
+        if(sender != null && sender.bucket != null)
+            sender.bucket.take(System.nanoTime());
+    }
+
+    public int getQueueDepth(SessionID sessionID) {
+        Sender sender = findSender(sessionID);
+        return sender == null ? 0 : sender.queue.size();
+    }
+
+    /**
+     *  @return depths of the queue seen by each new message, or null if
+     *  nothing has been sent on the session
+     */
+    public Histogram getDepthHistogram(SessionID sessionID) {
+        Sender sender = findSender(sessionID);
+        return sender == null ? null : sender.depths;
+    }
+
+    /**
+     *  @return microseconds each message waited to be sent, or null if
+     *  nothing has been sent on the session
+     */
+    public Histogram getWaitHistogram(SessionID sessionID) {
+        Sender sender = findSender(sessionID);
+        return sender == null ? null : sender.waits;
+    }
+
+    /**
+     *  @return the sessions that have had a message queued
+     */
+    public synchronized List getSessionIDs() {
+        return new ArrayList(senders.keySet());
+    }
+
+    private synchronized Sender findSender(SessionID sessionID) {
+        return (Sender)senders.get(sessionID);
+    }
+
+    /**
+     *  Stops every sender; messages still queued fail.
+     */
+    public void stop() {
+        synchronized(this) {
+            running = false;
+        }
+        Iterator i = senders.values().iterator();
+        while(i.hasNext()) {
+            Sender sender = (Sender)i.next();
+            sender.interrupt();
+            try {
+                sender.join(1000);
+            } catch(InterruptedException e) {}
+            sender.drain("Outbound queue stopped");
+        }
+    }
+
+    private synchronized Sender getSender(SessionID sessionID) {
+        if(!running)
+            return null;
+        Sender sender = (Sender)senders.get(sessionID);
+        if(sender == null) {
+            int size = (int)settings.getLong
+                       (sessionID, QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+            Policy policy = Policy.BLOCK;
+            try {
+                policy = Policy.parse(settings.getString
+                                      (sessionID, QUEUE_POLICY,
+                                       Policy.BLOCK.getName()));
+            } catch(IllegalArgumentException e) {
+                System.out.println(e);
+            }
+            TokenBucket bucket = null;
+            double rate = settings.getDouble
+                          (sessionID, MAX_MESSAGES_PER_SECOND, 0);
+            if(rate > 0) {
+                int burst = (int)settings.getLong
+                            (sessionID, MESSAGE_BURST, 1);
+                bucket = new TokenBucket(rate, burst);
+            }
+            sender = new Sender(sessionID, Math.max(1, size), policy, bucket);
+            senders.put(sessionID, sender);
+            sender.start();
+        }
+        return sender;
+    }
+
+    private static class Entry {
+        Message message;
+        Callback callback;
+        long queued = System.nanoTime();
+
+        Entry(Message message, Callback callback) {
+            this.message = message;
+            this.callback = callback;
+        }
+    }
+
+    private class Sender extends Thread {
+        private SessionID sessionID;
+        private Policy policy;
+        private BlockingQueue queue;
+        private TokenBucket bucket;
+        private Session session = null;
+        private Histogram depths = new Histogram("");
+        private Histogram waits = new Histogram("us");
+
+        Sender(SessionID sessionID, int size, Policy policy,
+               TokenBucket bucket) {
+            super("OutboundQueue-" + sessionID);
+            setDaemon(true);
+            this.sessionID = sessionID;
+            this.policy = policy;
+            this.queue = new ArrayBlockingQueue(size);
+            this.bucket = bucket;
+        }
+
+        boolean offer(Entry entry, boolean wait) {
+            depths.record(queue.size());
+            if(queue.offer(entry))
+                return true;
+
+            if(policy == Policy.DROP_OLDEST) {
+                do {
+                    Entry oldest = (Entry)queue.poll();
+                    if(oldest != null)
+                        fail(oldest, "Dropped from full outbound queue");
+                } while(!queue.offer(entry));
+                return true;
+            }
+            if(policy == Policy.BLOCK && wait
+                    && !SwingUtilities.isEventDispatchThread()) {
+                try {
+                    queue.put(entry);
+                    return true;
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            fail(entry, "Outbound queue full");
+            return false;
+        }
+
+        public void run() {
+            while(true) {
+                Entry entry;
+                try {
+                    entry = (Entry)queue.take();
+                } catch(InterruptedException e) {
+                    break;
+                }
+                if(bucket != null && !pace()) {
+                    fail(entry, "Outbound queue stopped");
+                    break;
+                }
+                waits.record((System.nanoTime() - entry.queued) / 1000);
+                send(entry);
+            }
+        }
+
+        private void send(Entry entry) {
+            String reason = null;
+            try {
+                // looked up once rather than by every sendToTarget
+                if(session == null)
+                    session = Session.lookupSession(sessionID);
+                if(session == null)
+                    reason = "Session not found: " + sessionID;
+                else if(!session.send(entry.message))
+                    reason = "Not sent on " + sessionID;
+            } catch(RuntimeException e) {
+                reason = e.toString();
+            }
+            try {
+                if(reason == null)
+                    entry.callback.sent(sessionID, entry.message);
+                else
+                    fail(entry, reason);
+            } catch(RuntimeException e) {
+                System.out.println(e);
+            }
+        }
+
+        // waits for a token; false if interrupted
+        private boolean pace() {
+            long wait = bucket.take(System.nanoTime());
+            if(wait == 0)
+                return true;
+            long deadline = System.nanoTime() + wait;
+            while(wait > 0) {
+                LockSupport.parkNanos(wait);
+                if(Thread.interrupted())
+                    return false;
+                wait = deadline - System.nanoTime();
+            }
+            return true;
+        }
+
+        void drain(String reason) {
+            Entry entry;
+            while((entry = (Entry)queue.poll()) != null)
+                fail(entry, reason);
+        }
+
+        private void fail(Entry entry, String reason) {
+            entry.callback.failed(sessionID, entry.message, reason);
+        }
+    }
+}
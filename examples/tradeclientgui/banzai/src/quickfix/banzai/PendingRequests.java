@@ -0,0 +1,195 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.IdentityHashMap;
+
+/**
+ *  Cancel and replace requests each order has in flight.
+ *
+ *  While a cancel is unacknowledged further cancels are suppressed,
+ *  and replaces are dropped since the order is going away.  While a
+ *  replace is unacknowledged further replaces are held back; only the
+ *  latest is kept, and it is sent once the earlier one is accepted or
+ *  rejected.  Requests are resolved by a report or reject carrying
+ *  their ClOrdID, by failing to send, or by the order finishing.
+ */
+public class PendingRequests {
+    /**
+     *  A replace held back until the one in flight is answered.
+     */
+    public static class Replace {
+        public Order newOrder;
+        public OutboundQueue.Callback callback;
+        /** ClOrdID the replace must refer to */
+        public String origID;
+
+        Replace(Order newOrder, OutboundQueue.Callback callback) {
+            this.newOrder = newOrder;
+            this.callback = callback;
+        }
+    }
+
+    public final static int SEND = 0;
+    public final static int QUEUED = 1;
+    public final static int SUPPRESSED = 2;
+
+    // cancelID of a cancel begun but not yet given its ClOrdID
+    private final static String UNNAMED = "";
+
+    private IdentityHashMap states = new IdentityHashMap();
+
+    private static class State {
+        String cancelID;
+        String replaceID;
+        String replaceOrigID;
+        Replace queued;
+
+        boolean isEmpty() {
+            return cancelID == null && replaceID == null && queued == null;
+        }
+    }
+
+    /**
+     *  Marks a cancel in flight.  Its ClOrdID is generated only once
+     *  this succeeds, and is then given with setCancelID.
+     *
+     *  @return false if a cancel is already in flight
+     */
+    public boolean beginCancel(Order order) {
+        Replace queued;
+        synchronized(this) {
+            State state = getState(order);
+            if(state.cancelID != null)
+                return false;
+            state.cancelID = UNNAMED;
+            queued = state.queued;
+            state.queued = null;
+        }
+        if(queued != null)
+            superseded(queued, "Cancel pending");
+        return true;
+    }
+
+    /**
+     *  Names the cancel begun for the order, unless the order has
+     *  finished since.
+     */
+    public synchronized void setCancelID(Order order, String id) {
+        State state = (State)states.get(order);
+        if(state != null && state.cancelID == UNNAMED)
+            state.cancelID = id;
+    }
+
+    /**
+     *  @return SEND if the replace should go out now, QUEUED if it is
+     *  held back behind another, or SUPPRESSED if a cancel is pending
+     */
+    public int beginReplace(Order order, Order newOrder,
+                            OutboundQueue.Callback callback) {
+        Replace superseded = null;
+        int result;
+        synchronized(this) {
+            State state = getState(order);
+            if(state.cancelID != null) {
+                result = SUPPRESSED;
+            } else if(state.replaceID != null) {
+                superseded = state.queued;
+                state.queued = new Replace(newOrder, callback);
+                result = QUEUED;
+            } else {
+                state.replaceID = newOrder.getID();
+                state.replaceOrigID = order.getID();
+                result = SEND;
+            }
+        }
+        if(superseded != null)
+            superseded(superseded, "Superseded by a later replace");
+        return result;
+    }
+
+    /**
+     *  Resolves the request with this ClOrdID.
+     *
+     *  @param accepted whether the counterparty took the request
+     *  @return a held back replace that should now be sent, with its
+     *  origID set and itself marked in flight, or null
+     */
+    public synchronized Replace answered(Order order, String id,
+                                         boolean accepted) {
+        State state = (State)states.get(order);
+        if(state == null)
+            return null;
+        if(id.equals(state.cancelID)) {
+            state.cancelID = null;
+        } else if(id.equals(state.replaceID)) {
+            String origID = accepted ? state.replaceID : state.replaceOrigID;
+            state.replaceID = null;
+            state.replaceOrigID = null;
+            Replace next = state.queued;
+            state.queued = null;
+            if(next != null) {
+                next.origID = origID;
+                state.replaceID = next.newOrder.getID();
+                state.replaceOrigID = origID;
+                return next;
+            }
+        }
+        if(state.isEmpty())
+            states.remove(order);
+        return null;
+    }
+
+    /**
+     *  Forgets everything for an order that has finished.
+     */
+    public void done(Order order) {
+        State state;
+        synchronized(this) {
+            state = (State)states.remove(order);
+        }
+        if(state != null && state.queued != null)
+            superseded(state.queued, "Order is done");
+    }
+
+    public synchronized boolean isCancelPending(Order order) {
+        State state = (State)states.get(order);
+        return state != null && state.cancelID != null;
+    }
+
+    public synchronized boolean isReplacePending(Order order) {
+        State state = (State)states.get(order);
+        return state != null && state.replaceID != null;
+    }
+
+    private State getState(Order order) {
+        State state = (State)states.get(order);
+        if(state == null) {
+            state = new State();
+            states.put(order, state);
+        }
+        return state;
+    }
+
+    private static void superseded(Replace replace, String reason) {
+        if(replace.callback != null)
+            replace.callback.failed(replace.newOrder.getSessionID(), null,
+                                    reason);
+    }
+}
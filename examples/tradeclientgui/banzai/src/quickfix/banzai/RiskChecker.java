@@ -0,0 +1,268 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import quickfix.SessionSettings;
+
+/**
+ *  Pre-trade limits checked before an order or replace is queued.
+ *
+ *  Limits are read once from the default section: MaxOrderQty,
+ *  MaxOrderNotional, MaxPosition and MaxOpenOrders (per symbol), and
+ *  PriceBandPercent, how far a price may stray from the symbol's last
+ *  fill.  An absent or zero limit is not checked.
+ *
+ *  Per symbol counters are atomics.  Open quantity and open orders are
+ *  reserved optimistically and given back if the limit is breached, so
+ *  concurrent senders never take a lock.  Cancels reduce risk and are
+ *  never refused.
+ */
+public class RiskChecker {
+    public final static String MAX_ORDER_QTY = "MaxOrderQty";
+    public final static String MAX_ORDER_NOTIONAL = "MaxOrderNotional";
+    public final static String MAX_POSITION = "MaxPosition";
+    public final static String MAX_OPEN_ORDERS = "MaxOpenOrders";
+    public final static String PRICE_BAND_PERCENT = "PriceBandPercent";
+
+    private long maxOrderQty;
+    private double maxOrderNotional;
+    private long maxPosition;
+    private int maxOpenOrders;
+    private double priceBand;
+
+    private ConcurrentHashMap symbols = new ConcurrentHashMap();
+    private ConcurrentHashMap reservations = new ConcurrentHashMap();
+
+    public RiskChecker(SessionSettings settings) {
+        BanzaiSettings banzaiSettings = new BanzaiSettings(settings);
+        maxOrderQty = limit(banzaiSettings.getLong
+                            (null, MAX_ORDER_QTY, 0), Long.MAX_VALUE);
+        maxOrderNotional = banzaiSettings.getDouble
+                           (null, MAX_ORDER_NOTIONAL, 0);
+        if(maxOrderNotional <= 0)
+            maxOrderNotional = Double.POSITIVE_INFINITY;
+        maxPosition = limit(banzaiSettings.getLong
+                            (null, MAX_POSITION, 0), Long.MAX_VALUE);
+        maxOpenOrders = (int)limit(banzaiSettings.getLong
+                                   (null, MAX_OPEN_ORDERS, 0),
+                                   Integer.MAX_VALUE);
+        priceBand = banzaiSettings.getDouble
+                    (null, PRICE_BAND_PERCENT, 0) / 100;
+        if(priceBand <= 0)
+            priceBand = Double.POSITIVE_INFINITY;
+    }
+
+    private static long limit(long value, long none) {
+        return value <= 0 ? none : value;
+    }
+
+    /**
+     *  Checks a new order and, if it passes, reserves its quantity and
+     *  an open order slot for its symbol.
+     *
+     *  @return null if the order may be sent, otherwise why not
+     */
+    public String checkNew(Order order) {
+        int quantity = order.getQuantity();
+        Symbol symbol = getSymbol(order.getSymbol());
+        String reason = checkOrder(order, quantity, symbol);
+        if(reason != null)
+            return reason;
+
+        int sign = sign(order.getSide());
+        AtomicLong open = sign < 0 ? symbol.openSell : symbol.openBuy;
+        long exposure = open.addAndGet(quantity);
+        if(Math.abs(symbol.position.get() + sign * exposure) > maxPosition) {
+            open.addAndGet(-quantity);
+            return "Position limit of " + maxPosition + " for "
+                   + order.getSymbol();
+        }
+        if(symbol.openOrders.incrementAndGet() > maxOpenOrders) {
+            symbol.openOrders.decrementAndGet();
+            open.addAndGet(-quantity);
+            return "Open order limit of " + maxOpenOrders + " for "
+                   + order.getSymbol();
+        }
+        reservations.put(order, new Reservation(symbol, open, quantity));
+        return null;
+    }
+
+    /**
+     *  Checks the order that would replace an open one.  Any increase in
+     *  quantity is judged against the position limit; the reservation
+     *  itself follows the execution reports.
+     */
+    public String checkReplace(Order order, Order newOrder) {
+        Symbol symbol = getSymbol(order.getSymbol());
+        String reason = checkOrder(newOrder, newOrder.getQuantity(), symbol);
+        if(reason != null)
+            return reason;
+
+        int increase = newOrder.getQuantity() - order.getQuantity();
+        if(increase > 0) {
+            int sign = sign(order.getSide());
+            AtomicLong open = sign < 0 ? symbol.openSell : symbol.openBuy;
+            long exposure = open.get() + increase;
+            if(Math.abs(symbol.position.get() + sign * exposure)
+                    > maxPosition)
+                return "Position limit of " + maxPosition + " for "
+                       + order.getSymbol();
+        }
+        return null;
+    }
+
+    private String checkOrder(Order order, int quantity, Symbol symbol) {
+        if(quantity <= 0)
+            return "Quantity must be positive";
+        if(quantity > maxOrderQty)
+            return "Quantity " + quantity + " exceeds " + maxOrderQty;
+
+        double lastFill = symbol.getLastFill();
+        double price = order.getLimitPrice();
+        if(Double.isNaN(price))
+            price = order.getStopPrice();
+        if(!Double.isNaN(price) && !Double.isNaN(lastFill)
+                && Math.abs(price - lastFill) > lastFill * priceBand)
+            return "Price " + price + " outside band around " + lastFill;
+
+        if(Double.isNaN(price))
+            price = lastFill;
+        if(!Double.isNaN(price) && quantity * price > maxOrderNotional)
+            return "Notional " + quantity * price + " exceeds "
+                   + maxOrderNotional;
+        return null;
+    }
+
+    /**
+     *  Called once an execution report has been applied to the order.
+     *  Moves filled quantity from open to position and gives back the
+     *  reservation when the order is done.
+     */
+    public void orderUpdated(Order order, int lastShares, double lastPx) {
+        Reservation reservation = (Reservation)reservations.get(order);
+        Symbol symbol = reservation == null
+                        ? getSymbol(order.getSymbol()) : reservation.symbol;
+        if(lastShares > 0) {
+            symbol.position.addAndGet(sign(order.getSide()) * lastShares);
+            symbol.setLastFill(lastPx);
+        }
+        if(reservation == null)
+            return;
+
+        boolean done = order.getRejected() || order.getCanceled()
+                       || order.getOpen() <= 0;
+        int open = done ? 0 : order.getOpen();
+        reservation.open.addAndGet(open - reservation.quantity);
+        reservation.quantity = open;
+        if(done && reservations.remove(order) != null)
+            symbol.openOrders.decrementAndGet();
+    }
+
+    /**
+     *  Takes over an order restored from the OrderStateStore: its fills
+     *  count towards the position and, while it is open, its remaining
+     *  quantity and an open order slot are reserved without checking
+     *  the limits.
+     */
+    public void recover(Order order) {
+        Symbol symbol = getSymbol(order.getSymbol());
+        int sign = sign(order.getSide());
+        symbol.position.addAndGet(sign * order.getExecuted());
+        int open = order.getQuantity() - order.getExecuted();
+        if(order.getRejected() || order.getCanceled() || open <= 0)
+            return;
+        AtomicLong exposure = sign < 0 ? symbol.openSell : symbol.openBuy;
+        exposure.addAndGet(open);
+        symbol.openOrders.incrementAndGet();
+        reservations.put(order, new Reservation(symbol, exposure, open));
+    }
+
+    /**
+     *  Gives back the reservation of an order that was never sent.
+     */
+    public void release(Order order) {
+        Reservation reservation = (Reservation)reservations.remove(order);
+        if(reservation == null)
+            return;
+        reservation.open.addAndGet(-reservation.quantity);
+        reservation.symbol.openOrders.decrementAndGet();
+    }
+
+    public long getPosition(String symbol) {
+        return getSymbol(symbol).position.get();
+    }
+
+    public int getOpenOrders(String symbol) {
+        return getSymbol(symbol).openOrders.get();
+    }
+
+    private Symbol getSymbol(String name) {
+        if(name == null)
+            name = "";
+        Symbol symbol = (Symbol)symbols.get(name);
+        if(symbol == null) {
+            symbol = new Symbol();
+            Symbol existing = (Symbol)symbols.putIfAbsent(name, symbol);
+            if(existing != null)
+                symbol = existing;
+        }
+        return symbol;
+    }
+
+    private static int sign(OrderSide side) {
+        if(side == OrderSide.BUY)
+            return 1;
+        if(side == OrderSide.SELL || side == OrderSide.SHORT_SELL
+                || side == OrderSide.SHORT_SELL_EXEMPT)
+            return -1;
+        return 0;
+    }
+
+    private static class Symbol {
+        AtomicLong position = new AtomicLong();
+        AtomicLong openBuy = new AtomicLong();
+        AtomicLong openSell = new AtomicLong();
+        AtomicInteger openOrders = new AtomicInteger();
+        AtomicLong lastFill = new AtomicLong
+                              (Double.doubleToLongBits(Double.NaN));
+
+        double getLastFill() {
+            return Double.longBitsToDouble(lastFill.get());
+        }
+
+        void setLastFill(double price) {
+            lastFill.set(Double.doubleToLongBits(price));
+        }
+    }
+
+    private static class Reservation {
+        Symbol symbol;
+        AtomicLong open;
+        int quantity;
+
+        Reservation(Symbol symbol, AtomicLong open, int quantity) {
+            this.symbol = symbol;
+            this.open = open;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.awt.Color;
+
+/**
+ *  What a table row looks like: the text of each cell and the row's
+ *  background.  Worked out when the row changes, so painting only
+ *  reads it.
+ */
+public class RowRenderState {
+    private String[] text;
+    private Color background = Color.white;
+
+    public RowRenderState(int columns) {
+        text = new String[columns];
+    }
+
+    public String getText(int column) {
+        return text[column];
+    }
+    public void setText(int column, String text) {
+        this.text[column] = text;
+    }
+    public void setText(int column, Object value) {
+        this.text[column] = value == null ? "" : value.toString();
+    }
+    public Color getBackground() {
+        return background;
+    }
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+}
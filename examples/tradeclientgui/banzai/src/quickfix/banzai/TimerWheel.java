@@ -0,0 +1,218 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Hierarchical timing wheel.  Four wheels of 64 slots each cover
+ *  2^24 ticks; a timeout sits in the coarsest wheel that can hold it
+ *  and moves down a wheel each time that wheel's slot comes round, so
+ *  scheduling and cancelling cost the same however many timeouts are
+ *  outstanding.  Timeouts further out than the wheels reach wait in
+ *  the last slot and are placed again as it comes round.
+ *
+ *  One daemon thread advances the wheels and runs expired tasks; tasks
+ *  should hand anything slow to another thread.
+ */
+public class TimerWheel {
+    private final static int BITS = 6;
+    private final static int SLOTS = 1 << BITS;
+    private final static int MASK = SLOTS - 1;
+    private final static int LEVELS = 4;
+
+    public class Timeout {
+        private Runnable task;
+        private long deadline;
+        private Timeout previous;
+        private Timeout next;
+        private int level = -1;
+        private int slot;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         *  @return false if the task already ran or was cancelled
+         */
+        public boolean cancel() {
+            synchronized(TimerWheel.this) {
+                if(level < 0)
+                    return false;
+                unlink(this);
+                return true;
+            }
+        }
+    }
+
+    private long tickNanos;
+    private Timeout[][] wheels = new Timeout[LEVELS][SLOTS];
+    private long current = 0;
+    private long start;
+    private int size = 0;
+    private Thread thread = null;
+    private volatile boolean running = false;
+
+    public TimerWheel(long tickMillis) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+    }
+
+    public synchronized void start() {
+        if(running)
+            return;
+        running = true;
+        start = System.nanoTime() - current * tickNanos;
+        thread = new Thread("TimerWheel") {
+            public void run() {
+                advance();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        Thread stopping;
+        synchronized(this) {
+            running = false;
+            stopping = thread;
+            thread = null;
+        }
+        if(stopping == null)
+            return;
+        stopping.interrupt();
+        try {
+            stopping.join(1000);
+        } catch(InterruptedException e) {}
+    }
+
+    /**
+     *  Runs the task once at least the delay has passed, rounded up to
+     *  a whole tick.
+     */
+    public synchronized Timeout schedule(Runnable task, long delayMillis) {
+        long ticks = (TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis))
+                      + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(task, current + Math.max(1, ticks));
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // callers hold the lock
+    private void place(Timeout timeout) {
+        long delta = timeout.deadline - current;
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+            level++;
+        int slot;
+        if(delta >= 1L << (BITS * LEVELS))
+            slot = (int)((current >>> (BITS * level)) + MASK) & MASK;
+        else
+            slot = (int)(timeout.deadline >>> (BITS * level)) & MASK;
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.previous = null;
+        timeout.next = wheels[level][slot];
+        if(timeout.next != null)
+            timeout.next.previous = timeout;
+        wheels[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if(timeout.previous != null)
+            timeout.previous.next = timeout.next;
+        else
+            wheels[timeout.level][timeout.slot] = timeout.next;
+        if(timeout.next != null)
+            timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.level = -1;
+        size--;
+    }
+
+    /**
+     *  Moves the clock on one tick.
+     *
+     *  @return the tasks now due
+     */
+    synchronized ArrayList tick() {
+        current++;
+        // move each coarser wheel's slot down, coarsest first
+        for(int level = LEVELS - 1; level > 0; --level) {
+            long mask = (1L << (BITS * level)) - 1;
+            if((current & mask) != 0)
+                continue;
+            int slot = (int)(current >>> (BITS * level)) & MASK;
+            Timeout timeout = wheels[level][slot];
+            wheels[level][slot] = null;
+            while(timeout != null) {
+                Timeout next = timeout.next;
+                place(timeout);
+                timeout = next;
+            }
+        }
+
+        ArrayList due = new ArrayList();
+        Timeout timeout = wheels[0][(int)current & MASK];
+        while(timeout != null) {
+            Timeout next = timeout.next;
+            if(timeout.deadline <= current) {
+                unlink(timeout);
+                due.add(timeout.task);
+            }
+            timeout = next;
+        }
+        return due;
+    }
+
+    private void advance() {
+        while(running) {
+            long wait;
+            synchronized(this) {
+                wait = start + (current + 1) * tickNanos - System.nanoTime();
+            }
+            if(wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch(InterruptedException e) {
+                    break;
+                }
+                continue;
+            }
+            ArrayList due = tick();
+            for(int i = 0; i < due.size(); ++i) {
+                try {
+                    ((Runnable)due.get(i)).run();
+                } catch(RuntimeException e) {
+                    System.out.println(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+/**
+ *  Paces messages to a rate, allowing bursts of up to a given size.
+ *  Each session's sender owns its bucket, but the engine's thread also
+ *  takes tokens for session level messages, so take is synchronized.
+ */
+public class TokenBucket {
+    private final static long SECOND_NANOS = 1000000000L;
+
+    private double nanosPerToken;
+    private double burst;
+    private double tokens;
+    private long last;
+
+    /**
+     *  @param rate tokens added per second
+     *  @param burst most tokens the bucket holds
+     */
+    public TokenBucket(double rate, int burst) {
+        this.nanosPerToken = SECOND_NANOS / rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.last = System.nanoTime();
+    }
+
+    /**
+     *  Takes a token, going into debt if there is none.
+     *
+     *  @return nanoseconds to wait before the token may be used
+     */
+    public synchronized long take(long now) {
+        tokens = Math.min(burst, tokens + (now - last) / nanosPerToken);
+        last = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long)(-tokens * nanosPerToken);
+    }
+}
@@ -0,0 +1,111 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ *  Formats the current UTC time as a FIX UTCTimestamp.
+ *
+ *  Each thread keeps the text of the current second and only fills in
+ *  the fraction on each call, so the calendar is consulted once a
+ *  second.  Microseconds are extrapolated from System.nanoTime between
+ *  readings of the wall clock, and never run backwards.
+ */
+public class TransactTimeClock {
+    private final static long SECOND_NANOS = 1000000000L;
+
+    private static ThreadLocal states = new ThreadLocal() {
+        protected Object initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     *  @return the time as yyyyMMdd-HH:mm:ss.SSS
+     */
+    public static String millis() {
+        State state = (State)states.get();
+        return state.format(state.now(), 3);
+    }
+
+    /**
+     *  @return the time as yyyyMMdd-HH:mm:ss.SSSSSS, which only FIX 5.0
+     *  and later counterparties accept
+     */
+    public static String micros() {
+        State state = (State)states.get();
+        return state.format(state.now(), 6);
+    }
+
+    private static class State {
+        private Calendar calendar =
+            new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        private char[] chars = new char[24];
+        private long second = -1;
+        private long anchorMicros;
+        private long anchorNanos;
+        private long last = 0;
+
+        long now() {
+            long nanos = System.nanoTime();
+            if(second == -1 || nanos - anchorNanos >= SECOND_NANOS) {
+                anchorMicros = System.currentTimeMillis() * 1000;
+                anchorNanos = nanos;
+            }
+            long micros = anchorMicros + (nanos - anchorNanos) / 1000;
+            if(micros < last)
+                micros = last;
+            last = micros;
+            return micros;
+        }
+
+        String format(long micros, int digits) {
+            long seconds = micros / 1000000;
+            if(seconds != second) {
+                second = seconds;
+                calendar.setTimeInMillis(seconds * 1000);
+                put(0, 4, calendar.get(Calendar.YEAR));
+                put(4, 2, calendar.get(Calendar.MONTH) + 1);
+                put(6, 2, calendar.get(Calendar.DAY_OF_MONTH));
+                chars[8] = '-';
+                put(9, 2, calendar.get(Calendar.HOUR_OF_DAY));
+                chars[11] = ':';
+                put(12, 2, calendar.get(Calendar.MINUTE));
+                chars[14] = ':';
+                put(15, 2, calendar.get(Calendar.SECOND));
+                chars[17] = '.';
+            }
+            long fraction = micros % 1000000;
+            if(digits == 3)
+                fraction /= 1000;
+            put(18, digits, fraction);
+            return new String(chars, 0, 18 + digits);
+        }
+
+        private void put(int offset, int width, long value) {
+            for(int i = offset + width - 1; i >= offset; --i) {
+                chars[i] = (char)('0' + value % 10);
+                value /= 10;
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ package quickfix.banzai.ui;
 import org.apache.log4j.Category;
 import org.apache.log4j.PatternLayout;
 import quickfix.banzai.Order;
+import quickfix.banzai.OrderSnapshot;
 import quickfix.banzai.OrderTableModel;
 import quickfix.banzai.ExecutionTableModel;
 import quickfix.banzai.BanzaiApplication;
@@ -47,6 +48,7 @@ public class BanzaiPanel extends JPanel
     private OrderPanel orderPanel = null;
     private ExecutionPanel executionPanel = null;
     private CancelReplacePanel cancelReplacePanel = null;
+    private MassCancelPanel massCancelPanel = null;
     private OrderTableModel orderTableModel = null;
 
     public BanzaiPanel(OrderTableModel orderTableModel,
@@ -74,6 +76,7 @@ public class BanzaiPanel extends JPanel
 
         tabbedPane.add("Orders", orderPanel);
         tabbedPane.add("Executions", executionPanel);
+        tabbedPane.add("Statistics", new StatisticsPanel(application));
         add(tabbedPane, constraints);
 
         cancelReplacePanel = new CancelReplacePanel(application);
@@ -81,15 +84,19 @@ public class BanzaiPanel extends JPanel
         add(cancelReplacePanel, constraints);
         cancelReplacePanel.setEnabled(false);
 
+        massCancelPanel = new MassCancelPanel(application);
+        add(massCancelPanel, constraints);
+
         orderEntryPanel.addActionListener(this);
         orderPanel.orderTable().getSelectionModel()
         .addListSelectionListener(new OrderSelection());
         cancelReplacePanel.addActionListener(this);
+        massCancelPanel.addActionListener(this);
         application.addOrderObserver(this);
     }
 
     public void update(Observable o, Object arg) {
-        cancelReplacePanel.update();
+        cancelReplacePanel.update((OrderSnapshot)arg);
     }
 
     public void actionPerformed(ActionEvent e) {
@@ -122,10 +129,12 @@ public class BanzaiPanel extends JPanel
             if(numSelected > 1)
                 orderEntryPanel.clearMessage();
             else {
-                Order order = (Order)orderTableModel.getOrder(selectedRow);
+                OrderTable orderTable = orderPanel.orderTable();
+                Order order = orderTable.getOrder(selectedRow);
                 if(order != null) {
                     orderEntryPanel.setMessage(order.getMessage());
-                    cancelReplacePanel.setOrder(order);
+                    cancelReplacePanel.setOrder
+                    (order, orderTable.getSnapshot(selectedRow));
                 }
             }
         }
@@ -34,6 +34,7 @@ public class CancelReplacePanel extends JPanel {
     private JButton cancelButton = new JButton("Cancel");
     private JButton replaceButton = new JButton("Replace");
     private Order order = null;
+    private String orderID = null;
 
     private GridBagConstraints constraints = new GridBagConstraints();
 
@@ -87,21 +88,34 @@ public class CancelReplacePanel extends JPanel {
         limitPriceLabel.setForeground(labelColor);
     }
 
-    public void update() {
-        setOrder(this.order);
+    /**
+     *  Shows the snapshot if it is of the order selected.
+     */
+    public void update(OrderSnapshot snapshot) {
+        if(snapshot != null && snapshot.getID().equals(orderID))
+            show(snapshot);
     }
 
-    public void setOrder(Order order) {
-        if(order == null)
+    /**
+     *  @param snapshot the snapshot the order table shows for the order
+     */
+    public void setOrder(Order order, OrderSnapshot snapshot) {
+        if(order == null || snapshot == null)
             return;
         this.order = order;
+        orderID = snapshot.getID();
+        show(snapshot);
+    }
+
+    // the order itself belongs to the thread applying its reports
+    private void show(OrderSnapshot snapshot) {
         quantityTextField.setText
-        (new Integer(order.getOpen()).toString());
+        (new Integer(snapshot.getOpen()).toString());
 
-        Double limit = order.getLimit();
+        Double limit = snapshot.getLimit();
         if(limit != null)
-            limitPriceTextField.setText(order.getLimit().toString());
-        setEnabled(order.getOpen() > 0);
+            limitPriceTextField.setText(limit.toString());
+        setEnabled(snapshot.getOpen() > 0);
     }
 
     private JComponent add(JComponent component, int x, int y) {
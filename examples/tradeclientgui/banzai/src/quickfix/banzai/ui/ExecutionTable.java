@@ -19,29 +19,36 @@
 
 package quickfix.banzai.ui;
 
+import quickfix.banzai.BlotterView;
 import quickfix.banzai.ExecutionTableModel;
-import quickfix.banzai.Execution;
+import quickfix.banzai.RowRenderState;
 import javax.swing.table.*;
 import javax.swing.*;
 import java.awt.*;
 
 public class ExecutionTable extends JTable {
+    private ExecutionTableModel executionTableModel;
+    private BlotterView view;
+
     public ExecutionTable(ExecutionTableModel executionTableModel) {
-        super(executionTableModel);
+        super(new BlotterView(executionTableModel));
+        this.executionTableModel = executionTableModel;
+        this.view = (BlotterView)dataModel;
+        getTableHeader().addMouseListener(new SortByColumn(view));
+    }
+
+    public BlotterView getView() {
+        return view;
     }
 
     public Component prepareRenderer(TableCellRenderer renderer,
                                      int row, int column) {
-        Execution execution = (Execution)((ExecutionTableModel)dataModel)
-                              .getExecution(row);
+        RowRenderState render = executionTableModel.getRenderState
+                                (view.getModelRow(row));
 
         DefaultTableCellRenderer r = (DefaultTableCellRenderer)renderer;
         r.setForeground(Color.black);
-
-        if((row%2) == 0)
-            r.setBackground(Color.white);
-        else
-            r.setBackground(Color.lightGray);
+        r.setBackground(render.getBackground());
 
         return super.prepareRenderer(renderer, row, column);
     }
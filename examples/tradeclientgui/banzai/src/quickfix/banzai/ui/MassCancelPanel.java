@@ -0,0 +1,131 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai.ui;
+
+import java.util.Observable;
+import java.util.Observer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import quickfix.banzai.*;
+import quickfix.SessionID;
+
+/**
+ *  Cancels every open order of a session, optionally only those of
+ *  one symbol or side.
+ */
+public class MassCancelPanel extends JPanel implements Observer {
+    private final static String ANY_SIDE = "Any side";
+
+    private JButton cancelAllButton = new JButton("Cancel All");
+    private JComboBox sessionComboBox = new JComboBox();
+    private JTextField symbolTextField = new JTextField();
+    private JComboBox sideComboBox = new JComboBox();
+
+    private GridBagConstraints constraints = new GridBagConstraints();
+
+    private BanzaiApplication application;
+
+    public MassCancelPanel(final BanzaiApplication application) {
+        setName("MassCancelPanel");
+        this.application = application;
+        application.addLogonObserver(this);
+
+        sideComboBox.addItem(ANY_SIDE);
+        Object[] sides = OrderSide.toArray();
+        for(int i = 0; i < sides.length; ++i)
+            sideComboBox.addItem(sides[i]);
+
+        cancelAllButton.addActionListener(new CancelAllListener());
+        sessionComboBox.addItemListener(new ItemListener() {
+            public void itemStateChanged(ItemEvent e) {
+                cancelAllButton.setEnabled
+                (sessionComboBox.getSelectedItem() != null);
+            }
+        });
+
+        setLayout(new GridBagLayout());
+        createComponents();
+    }
+
+    public void addActionListener(ActionListener listener) {
+        cancelAllButton.addActionListener(listener);
+    }
+
+    private void createComponents() {
+        constraints.fill = GridBagConstraints.BOTH;
+        constraints.weightx = 1;
+
+        int x = 0;
+        int y = 0;
+
+        constraints.insets = new Insets(0, 0, 5, 5);
+        cancelAllButton.setName("CancelAllButton");
+        add(cancelAllButton, x, y);
+        constraints.weightx = 5;
+        sessionComboBox.setName("MassCancelSessionComboBox");
+        add(sessionComboBox, ++x, y);
+        constraints.weightx = 0;
+        add(new JLabel("Symbol"), ++x, y);
+        constraints.weightx = 5;
+        symbolTextField.setName("MassCancelSymbolTextField");
+        add(symbolTextField, ++x, y);
+        constraints.weightx = 1;
+        sideComboBox.setName("MassCancelSideComboBox");
+        add(sideComboBox, ++x, y);
+
+        cancelAllButton.setEnabled(false);
+    }
+
+    private JComponent add(JComponent component, int x, int y) {
+        constraints.gridx = x;
+        constraints.gridy = y;
+        add(component, constraints);
+        return component;
+    }
+
+    public void update(Observable o, Object arg) {
+        LogonEvent logonEvent = (LogonEvent)arg;
+        if(logonEvent.isLoggedOn())
+            sessionComboBox.addItem(logonEvent.getSessionID());
+        else
+            sessionComboBox.removeItem(logonEvent.getSessionID());
+    }
+
+    private class CancelAllListener implements ActionListener {
+        public void actionPerformed(ActionEvent e) {
+            SessionID sessionID =
+                (SessionID)sessionComboBox.getSelectedItem();
+            if(sessionID == null)
+                return;
+            String symbol = symbolTextField.getText().trim();
+            Object side = sideComboBox.getSelectedItem();
+            try {
+                application.massCancel
+                (sessionID, symbol.length() == 0 ? null : symbol,
+                 side instanceof OrderSide ? (OrderSide)side : null);
+            } catch(IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(null,
+                    ex.getMessage(),
+                    "Failed to send message",
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+}
@@ -30,6 +30,10 @@ import quickfix.banzai.*;
 import quickfix.SessionID;
 
 public class OrderEntryPanel extends JPanel implements Observer {
+    private final static String DIRECT = "Direct";
+    private final static String TWAP = "TWAP";
+    private final static String VWAP = "VWAP";
+
     private boolean symbolEntered = false;
     private boolean quantityEntered = false;
     private boolean limitEntered = false;
@@ -51,6 +55,17 @@ public class OrderEntryPanel extends JPanel implements Observer {
 
     private JComboBox sessionComboBox = new JComboBox();
 
+    private JComboBox strategyComboBox =
+        new JComboBox(new Object[] { DIRECT, TWAP, VWAP });
+    private IntegerNumberTextField minutesTextField =
+        new IntegerNumberTextField();
+    private IntegerNumberTextField slicesTextField =
+        new IntegerNumberTextField();
+    private JTextField profileTextField = new JTextField();
+    private JLabel minutesLabel = new JLabel("Minutes");
+    private JLabel slicesLabel = new JLabel("Slices");
+    private JLabel profileLabel = new JLabel("Profile");
+
     private JLabel limitPriceLabel = new JLabel("Limit");
     private JLabel stopPriceLabel = new JLabel("Stop");
 
@@ -131,6 +146,22 @@ public class OrderEntryPanel extends JPanel implements Observer {
         add(tifComboBox, ++x, y);
 
         constraints.insets = new Insets(3, 0, 0, 0);
+        strategyComboBox.setName("StrategyComboBox");
+        add(strategyComboBox, x=0, ++y);
+        minutesLabel.setHorizontalAlignment(JLabel.RIGHT);
+        add(minutesLabel, ++x, y);
+        minutesTextField.setName("MinutesTextField");
+        add(minutesTextField, ++x, y);
+        slicesLabel.setHorizontalAlignment(JLabel.RIGHT);
+        add(slicesLabel, ++x, y);
+        slicesTextField.setName("SlicesTextField");
+        add(slicesTextField, ++x, y);
+        profileLabel.setHorizontalAlignment(JLabel.RIGHT);
+        add(profileLabel, ++x, y);
+        profileTextField.setName("ProfileTextField");
+        profileTextField.setToolTipText("Volume weights, comma separated");
+        add(profileTextField, ++x, y);
+
         constraints.gridwidth = GridBagConstraints.RELATIVE;
         sessionComboBox.setName("SessionComboBox");
         add(sessionComboBox, 0, ++y);
@@ -140,6 +171,9 @@ public class OrderEntryPanel extends JPanel implements Observer {
         constraints.gridwidth = 0;
         add(messageLabel, 0, ++y);
 
+        strategyComboBox.addItemListener(new StrategyListener());
+        strategyComboBox.setSelectedItem(TWAP);
+        strategyComboBox.setSelectedItem(DIRECT);
         typeComboBox.addItemListener(new PriceListener());
         typeComboBox.setSelectedItem(OrderType.STOP);
         typeComboBox.setSelectedItem(OrderType.MARKET);
@@ -213,6 +247,38 @@ public class OrderEntryPanel extends JPanel implements Observer {
         }
     }
 
+    private class StrategyListener implements ItemListener {
+        public void itemStateChanged(ItemEvent e) {
+            Object strategy = strategyComboBox.getSelectedItem();
+            enable(minutesLabel, minutesTextField, strategy != DIRECT);
+            enable(slicesLabel, slicesTextField, strategy == TWAP);
+            enable(profileLabel, profileTextField, strategy == VWAP);
+        }
+
+        private void enable(JLabel label, JTextField field,
+                            boolean enabled) {
+            field.setEnabled(enabled);
+            field.setBackground(enabled ? Color.white : Color.gray);
+            label.setForeground(enabled ? Color.black : Color.gray);
+        }
+    }
+
+    // volume weights separated by commas or spaces, checked here so
+    // that a bad profile is refused before the order gets a row
+    private double[] getProfile() throws IllegalArgumentException {
+        String[] weights =
+            profileTextField.getText().trim().split("[,\\s]+");
+        double[] profile = new double[weights.length];
+        double total = 0;
+        for(int i = 0; i < weights.length; ++i) {
+            profile[i] = Double.parseDouble(weights[i]);
+            total += profile[i];
+        }
+        if(!(total > 0))
+            throw new IllegalArgumentException("Volume profile has no volume");
+        return profile;
+    }
+
     public void update(Observable o, Object arg) {
         LogonEvent logonEvent = (LogonEvent)arg;
         if(logonEvent.isLoggedOn())
@@ -239,10 +305,26 @@ public class OrderEntryPanel extends JPanel implements Observer {
                 order.setStop(stopPriceTextField.getText());
             order.setSessionID((SessionID)sessionComboBox.getSelectedItem());
 
-            orderTableModel.addOrder(order);
-            
+            // a TWAP or VWAP order is worked as a schedule of children
+            Object strategy = strategyComboBox.getSelectedItem();
             try {
-              application.send(order);
+              if(strategy == DIRECT) {
+                orderTableModel.addOrder(order);
+                application.send(order);
+                return;
+              }
+              long duration = 60L * 1000
+                              * Integer.parseInt(minutesTextField.getText());
+              AlgoScheduler algos = application.getAlgoScheduler();
+              if(strategy == TWAP) {
+                int slices = Integer.parseInt(slicesTextField.getText());
+                orderTableModel.addOrder(order);
+                algos.twap(order, duration, slices);
+              } else {
+                double[] profile = getProfile();
+                orderTableModel.addOrder(order);
+                algos.vwap(order, duration, profile);
+              }
             } catch(IllegalArgumentException ex) {
               JOptionPane.showMessageDialog(null,
                   ex.getMessage(),
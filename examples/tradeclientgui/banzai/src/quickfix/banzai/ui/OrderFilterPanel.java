@@ -0,0 +1,135 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai.ui;
+
+import java.util.Observable;
+import java.util.Observer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import quickfix.banzai.*;
+import quickfix.SessionID;
+
+/**
+ *  Narrows the order table to one symbol, one session and the checked
+ *  statuses.  With nothing narrowed, the table's filter is cleared.
+ */
+public class OrderFilterPanel extends JPanel implements Observer {
+    private final static String ANY_SESSION = "Any session";
+    private final static int[] STATUSES = {
+        OrderFilter.PENDING, OrderFilter.WORKING, OrderFilter.FILLED,
+        OrderFilter.CANCELED, OrderFilter.REJECTED
+    };
+
+    private JTextField symbolTextField = new JTextField();
+    private JComboBox sessionComboBox = new JComboBox();
+    private JCheckBox[] statusCheckBoxes = new JCheckBox[] {
+        new JCheckBox("Pending", true),
+        new JCheckBox("Working", true),
+        new JCheckBox("Filled", true),
+        new JCheckBox("Canceled", true),
+        new JCheckBox("Rejected", true)
+    };
+
+    private GridBagConstraints constraints = new GridBagConstraints();
+
+    private BlotterView view;
+
+    public OrderFilterPanel(BlotterView view,
+                            BanzaiApplication application) {
+        setName("OrderFilterPanel");
+        this.view = view;
+        application.addLogonObserver(this);
+
+        sessionComboBox.addItem(ANY_SESSION);
+
+        ActionListener apply = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                apply();
+            }
+        };
+        symbolTextField.addActionListener(apply);
+        sessionComboBox.addActionListener(apply);
+        for(int i = 0; i < statusCheckBoxes.length; ++i)
+            statusCheckBoxes[i].addActionListener(apply);
+
+        setLayout(new GridBagLayout());
+        createComponents();
+    }
+
+    private void createComponents() {
+        constraints.fill = GridBagConstraints.BOTH;
+        constraints.weightx = 0;
+
+        int x = 0;
+        int y = 0;
+
+        constraints.insets = new Insets(0, 0, 5, 5);
+        add(new JLabel("Symbol"), x, y);
+        constraints.weightx = 5;
+        symbolTextField.setName("FilterSymbolTextField");
+        add(symbolTextField, ++x, y);
+        sessionComboBox.setName("FilterSessionComboBox");
+        add(sessionComboBox, ++x, y);
+        constraints.weightx = 0;
+        for(int i = 0; i < statusCheckBoxes.length; ++i) {
+            statusCheckBoxes[i].setName
+            ("Filter" + statusCheckBoxes[i].getText() + "CheckBox");
+            add(statusCheckBoxes[i], ++x, y);
+        }
+    }
+
+    private JComponent add(JComponent component, int x, int y) {
+        constraints.gridx = x;
+        constraints.gridy = y;
+        add(component, constraints);
+        return component;
+    }
+
+    private void apply() {
+        String symbol = symbolTextField.getText().trim();
+        Object session = sessionComboBox.getSelectedItem();
+        SessionID sessionID =
+            session instanceof SessionID ? (SessionID)session : null;
+        int statuses = 0;
+        for(int i = 0; i < statusCheckBoxes.length; ++i) {
+            if(statusCheckBoxes[i].isSelected())
+                statuses |= STATUSES[i];
+        }
+
+        if(symbol.length() == 0 && sessionID == null
+                && statuses == OrderFilter.ALL)
+            view.setFilter(null);
+        else
+            view.setFilter(new OrderFilter
+                           (symbol.length() == 0 ? null : symbol,
+                            sessionID, statuses));
+    }
+
+    // sessions stay listed after logout, as their orders stay shown
+    public void update(Observable o, Object arg) {
+        LogonEvent logonEvent = (LogonEvent)arg;
+        SessionID sessionID = logonEvent.getSessionID();
+        for(int i = 0; i < sessionComboBox.getItemCount(); ++i) {
+            if(sessionID.equals(sessionComboBox.getItemAt(i)))
+                return;
+        }
+        sessionComboBox.addItem(sessionID);
+    }
+}
@@ -28,14 +28,14 @@ import java.awt.*;
 import java.util.ArrayList;
 
 /**
- *  Contains the Order table.
+ *  Contains the Order table and the controls that filter it.
  */
 public class OrderPanel extends JPanel {
 
     private static Category log =
         Category.getInstance(OrderPanel.class.getName());
 
-    private JTable orderTable = null;
+    private OrderTable orderTable = null;
 
     public OrderPanel(OrderTableModel orderTableModel,
                       BanzaiApplication application) {
@@ -47,10 +47,16 @@ public class OrderPanel extends JPanel {
         constraints.weighty = 1;
 
         orderTable = new OrderTable(orderTableModel, application);
+        constraints.gridy = 0;
+        constraints.weighty = 0;
+        add(new OrderFilterPanel(orderTable.getView(), application),
+            constraints);
+        constraints.gridy = 1;
+        constraints.weighty = 1;
         add(new JScrollPane(orderTable), constraints);
     }
 
-    public JTable orderTable() {
+    public OrderTable orderTable() {
         return orderTable;
     }
 }
@@ -19,46 +19,67 @@
 
 package quickfix.banzai.ui;
 
+import quickfix.banzai.BlotterView;
 import quickfix.banzai.OrderTableModel;
 import quickfix.banzai.Order;
+import quickfix.banzai.OrderSnapshot;
+import quickfix.banzai.RowRenderState;
 import quickfix.banzai.BanzaiApplication;
 import javax.swing.table.*;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 
+/**
+ *  Shows the orders through a BlotterView; clicking a column header
+ *  sorts by it, and clicking it again reverses the order.
+ */
 public class OrderTable extends JTable implements MouseListener {
     private BanzaiApplication application;
+    private OrderTableModel orderTableModel;
+    private BlotterView view;
 
     public OrderTable(OrderTableModel orderTableModel,
                       BanzaiApplication application) {
-        super(orderTableModel);
+        super(new BlotterView(orderTableModel));
         this.application = application;
+        this.orderTableModel = orderTableModel;
+        this.view = (BlotterView)dataModel;
         addMouseListener(this);
+        getTableHeader().addMouseListener(new SortByColumn(view));
+    }
+
+    public BlotterView getView() {
+        return view;
+    }
+
+    /**
+     *  @return the order shown at the row, or null
+     */
+    public Order getOrder(int row) {
+        if(row < 0 || row >= view.getRowCount())
+            return null;
+        return orderTableModel.getOrder(view.getModelRow(row));
+    }
+
+    /**
+     *  @return the latest snapshot of the order shown at the row, or
+     *  null
+     */
+    public OrderSnapshot getSnapshot(int row) {
+        if(row < 0 || row >= view.getRowCount())
+            return null;
+        return orderTableModel.getSnapshot(view.getModelRow(row));
     }
 
     public Component prepareRenderer(TableCellRenderer renderer,
                                      int row, int column) {
-        Order order = (Order)((OrderTableModel)dataModel).getOrder(row);
-
-        int open = order.getOpen();
-        int executed = order.getExecuted();
-        boolean rejected = order.getRejected();
-        boolean canceled = order.getCanceled();
+        RowRenderState render = orderTableModel.getRenderState
+                                (view.getModelRow(row));
 
         DefaultTableCellRenderer r = (DefaultTableCellRenderer)renderer;
         r.setForeground(Color.black);
-
-        if(rejected)
-            r.setBackground(Color.red);
-        else if(canceled)
-            r.setBackground(Color.white);
-        else if(open == 0 && executed == 0)
-            r.setBackground(Color.yellow);
-        else if(open > 0)
-            r.setBackground(Color.green);
-        else if(open == 0)
-            r.setBackground(Color.white);
+        r.setBackground(render.getBackground());
 
         return super.prepareRenderer(renderer, row, column);
     }
@@ -66,9 +87,9 @@ public class OrderTable extends JTable implements MouseListener {
     public void mouseClicked(MouseEvent e) {
         if(e.getClickCount() != 2)
             return;
-        int row = rowAtPoint(e.getPoint());
-        Order order = (Order)((OrderTableModel)dataModel).getOrder(row);
-        application.cancel(order);
+        Order order = getOrder(rowAtPoint(e.getPoint()));
+        if(order != null)
+            application.cancel(order);
     }
 public void mouseEntered(MouseEvent e) {}
     public void mouseExited(MouseEvent e) {}
@@ -0,0 +1,46 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai.ui;
+
+import quickfix.banzai.BlotterView;
+import javax.swing.table.*;
+import java.awt.event.*;
+
+/**
+ *  Sorts a BlotterView by the column whose header is clicked, reversing
+ *  the order when it is clicked again.
+ */
+public class SortByColumn extends MouseAdapter {
+    private BlotterView view;
+
+    public SortByColumn(BlotterView view) {
+        this.view = view;
+    }
+
+    public void mouseClicked(MouseEvent e) {
+        JTableHeader header = (JTableHeader)e.getSource();
+        int column = header.columnAtPoint(e.getPoint());
+        if(column < 0)
+            return;
+        column = header.getTable().convertColumnIndexToModel(column);
+        boolean ascending = column != view.getSortColumn()
+                            || !view.isAscending();
+        view.setSort(column, ascending);
+    }
+}
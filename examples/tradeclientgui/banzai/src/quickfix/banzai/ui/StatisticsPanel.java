@@ -0,0 +1,89 @@
+/****************************************************************************
+** Copyright (c) 2001-2014
+**
+** This file is part of the QuickFIX FIX Engine
+**
+** This file may be distributed under the terms of the quickfixengine.org
+** license as defined by quickfixengine.org and appearing in the file
+** LICENSE included in the packaging of this file.
+**
+** This file is provided AS IS with NO WARRANTY OF ANY KIND, INCLUDING THE
+** WARRANTY OF DESIGN, MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+**
+** See http://www.quickfixengine.org/LICENSE for licensing information.
+**
+** Contact ask@quickfixengine.org if any conditions of this licensing are
+** not clear to you.
+**
+****************************************************************************/
+package quickfix.banzai.ui;
+
+import quickfix.SessionID;
+import quickfix.banzai.BanzaiApplication;
+import quickfix.banzai.OutboundQueue;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.List;
+
+/**
+ *  Shows the application's message counters and, for each session,
+ *  the outbound queue's depth and its depth and wait histograms.
+ *  Refreshed every second while the panel is showing.
+ */
+public class StatisticsPanel extends JPanel implements ActionListener {
+    private BanzaiApplication application;
+    private JTextArea text = new JTextArea();
+    private Timer timer = new Timer(1000, this);
+
+    public StatisticsPanel(BanzaiApplication application) {
+        this.application = application;
+        setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        setLayout(new GridBagLayout());
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.fill = GridBagConstraints.BOTH;
+        constraints.weightx = 1;
+        constraints.weighty = 1;
+
+        text.setEditable(false);
+        text.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        add(new JScrollPane(text), constraints);
+    }
+
+    public void addNotify() {
+        super.addNotify();
+        refresh();
+        timer.start();
+    }
+
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        if(isShowing())
+            refresh();
+    }
+
+    protected void refresh() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("Inbound messages\n");
+        buffer.append(application.getRouter().toString());
+
+        OutboundQueue outbound = application.getOutboundQueue();
+        List sessionIDs = outbound.getSessionIDs();
+        for(int i = 0; i < sessionIDs.size(); ++i) {
+            SessionID sessionID = (SessionID)sessionIDs.get(i);
+            buffer.append("\nOutbound ").append(sessionID).append('\n');
+            buffer.append("  queued ")
+            .append(outbound.getQueueDepth(sessionID)).append('\n');
+            buffer.append("  depth  ")
+            .append(outbound.getDepthHistogram(sessionID)).append('\n');
+            buffer.append("  wait   ")
+            .append(outbound.getWaitHistogram(sessionID)).append('\n');
+        }
+        text.setText(buffer.toString());
+    }
+}
@@ -0,0 +1,196 @@
+package quickfix.banzai;
+
+import java.io.File;
+import java.util.ArrayList;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import junit.framework.TestCase;
+
+public class BlotterViewTest extends TestCase {
+    private Blotter blotter;
+    private BlotterView view;
+
+    public BlotterViewTest(String name) {
+        super(name);
+    }
+
+    /**
+     *  Rows of integers, of which only the last window are held.
+     */
+    private static class Blotter extends CoalescingTableModel {
+        ArrayList values = new ArrayList();
+        int window;
+
+        Blotter(int window) {
+            this.window = window;
+        }
+
+        void add(int value) {
+            values.add(new Integer(value));
+            rowsInserted(values.size() - 1, values.size() - 1);
+        }
+
+        void set(int row, int value) {
+            values.set(row, new Integer(value));
+            rowsUpdated(row, row);
+        }
+
+        public int getFirstRow() {
+            return Math.max(0, getRowCount() - window);
+        }
+
+        public int getColumnCount() {
+            return 1;
+        }
+
+        public Object getValueAt(int row, int column) {
+            if(row < getFirstRow())
+                fail("read row " + row + " that is no longer held");
+            return values.get(row);
+        }
+    }
+
+    public void setUp() {
+        blotter = new Blotter(Integer.MAX_VALUE);
+        view = new BlotterView(blotter);
+    }
+
+    private void assertView(int[] modelRows) {
+        assertEquals(modelRows.length, view.getRowCount());
+        for(int i = 0; i < modelRows.length; ++i) {
+            assertEquals(modelRows[i], view.getModelRow(i));
+            assertEquals(i, view.getViewRow(modelRows[i]));
+        }
+    }
+
+    public void testFollowsBlotterOrderUnsorted() {
+        blotter.add(3);
+        blotter.add(1);
+        blotter.add(2);
+        blotter.flush();
+        assertView(new int[] { 0, 1, 2 });
+    }
+
+    public void testSortsAndMovesChangedRows() {
+        blotter.add(3);
+        blotter.add(1);
+        blotter.add(2);
+        blotter.flush();
+        view.setSort(0, true);
+        assertView(new int[] { 1, 2, 0 });
+        blotter.set(1, 9);
+        blotter.flush();
+        assertView(new int[] { 2, 0, 1 });
+        view.setSort(0, false);
+        assertView(new int[] { 1, 0, 2 });
+    }
+
+    public void testFilter() {
+        for(int i = 0; i < 6; ++i)
+            blotter.add(i);
+        blotter.flush();
+        view.setFilter(new BlotterView.Filter() {
+            public boolean include(CoalescingTableModel model, int row) {
+                return ((Integer)model.getValueAt(row, 0)).intValue() % 2 == 0;
+            }
+        });
+        assertView(new int[] { 0, 2, 4 });
+        assertEquals(-1, view.getViewRow(1));
+    }
+
+    public void testShowsOnlyRowsStillHeld() {
+        blotter = new Blotter(4);
+        view = new BlotterView(blotter);
+        view.setSort(0, true);
+        int[] values = { 50, 10, 40, 20, 30, 5, 60 };
+        for(int i = 0; i < values.length; ++i) {
+            blotter.add(values[i]);
+            blotter.flush();
+        }
+        // rows 3 to 6 hold 20, 30, 5 and 60
+        assertView(new int[] { 5, 3, 4, 6 });
+        assertEquals(-1, view.getViewRow(0));
+        assertEquals(-1, view.getViewRow(2));
+        assertEquals(new Integer(5), view.getValueAt(0, 0));
+    }
+
+    public void testBulkInsertPastTheWindow() {
+        blotter = new Blotter(3000);
+        view = new BlotterView(blotter);
+        view.setSort(0, false);
+        for(int i = 0; i < 10000; ++i) {
+            blotter.add(i % 7);
+            if(i % 1000 == 999)
+                blotter.flush();
+        }
+        blotter.flush();
+        assertEquals(3000, view.getRowCount());
+        int previous = Integer.MAX_VALUE;
+        int previousRow = -1;
+        for(int i = 0; i < view.getRowCount(); ++i) {
+            int row = view.getModelRow(i);
+            assertTrue(row >= 7000);
+            int value = ((Integer)view.getValueAt(i, 0)).intValue();
+            assertTrue(value <= previous);
+            if(value == previous)
+                assertTrue(row > previousRow);
+            previous = value;
+            previousRow = row;
+        }
+    }
+
+    public void testScrollsToSpilledRowsUnsorted() throws Exception {
+        File file = File.createTempFile("blotter", ".spill");
+        file.deleteOnExit();
+        final ExecutionTableModel executions = new ExecutionTableModel();
+        executions.setCapacity(4);
+        executions.setSpillFile(file);
+        final BlotterView[] views = new BlotterView[1];
+        final ArrayList updated = new ArrayList();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                for(int i = 0; i < 10; ++i) {
+                    Execution execution = new Execution();
+                    execution.setExchangeID("X" + i);
+                    execution.setSymbol("S" + i);
+                    execution.setQuantity(i + 1);
+                    execution.setSide(OrderSide.BUY);
+                    execution.setPrice(i);
+                    executions.addExecution(execution);
+                }
+                executions.flush();
+                views[0] = new BlotterView(executions);
+                views[0].addTableModelListener(new TableModelListener() {
+                    public void tableChanged(TableModelEvent e) {
+                        if(e.getType() == TableModelEvent.UPDATE)
+                            updated.add(e);
+                    }
+                });
+            }
+        });
+        final BlotterView view = views[0];
+        assertEquals(6, executions.getFirstRow());
+        assertEquals(10, view.getRowCount());
+        assertEquals(1, view.getModelRow(1));
+        assertEquals(1, view.getViewRow(1));
+
+        final Object[] text = new Object[1];
+        for(int tries = 0; tries < 200; ++tries) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    executions.flush();
+                    text[0] = view.getValueAt(1, 0);
+                }
+            });
+            if(!"".equals(text[0]))
+                break;
+            Thread.sleep(10);
+        }
+        assertEquals("S1", text[0]);
+        assertTrue(updated.size() > 0);
+        TableModelEvent event = (TableModelEvent)updated.get(0);
+        assertTrue(event.getFirstRow() <= 1 && event.getLastRow() >= 1);
+        executions.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package quickfix.banzai;
+
+import java.util.*;
+import junit.framework.TestCase;
+
+public class ClOrdIDIndexTest extends TestCase {
+    private ClOrdIDIndex index;
+
+    public ClOrdIDIndexTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        index = new ClOrdIDIndex(8);
+    }
+
+    public void testPutGetAndOverwrite() {
+        assertEquals(-1, index.get("1"));
+        index.put("1", 0);
+        index.put("2", 1);
+        assertEquals(0, index.get("1"));
+        assertEquals(1, index.get("2"));
+        index.put("1", 5);
+        assertEquals(5, index.get("1"));
+        assertEquals(2, index.size());
+    }
+
+    public void testRemove() {
+        index.put("1", 0);
+        assertEquals(0, index.remove("1"));
+        assertEquals(-1, index.remove("1"));
+        assertEquals(-1, index.get("1"));
+        assertEquals(0, index.size());
+    }
+
+    public void testGrowsPastInitialCapacity() {
+        for(int i = 0; i < 1000; ++i)
+            index.put("ID" + i, i);
+        assertEquals(1000, index.size());
+        for(int i = 0; i < 1000; ++i)
+            assertEquals(i, index.get("ID" + i));
+    }
+
+    public void testRemoveKeepsCollidingKeysReachable() {
+        // all four strings share one hashCode, so they share a probe chain
+        String[] ids = { "AaAa", "AaBB", "BBAa", "BBBB" };
+        for(int i = 0; i < ids.length; ++i)
+            index.put(ids[i], i);
+        assertEquals(1, index.remove("AaBB"));
+        assertEquals(0, index.get("AaAa"));
+        assertEquals(-1, index.get("AaBB"));
+        assertEquals(2, index.get("BBAa"));
+        assertEquals(3, index.get("BBBB"));
+        assertEquals(0, index.remove("AaAa"));
+        assertEquals(2, index.get("BBAa"));
+        assertEquals(3, index.get("BBBB"));
+        assertEquals(2, index.size());
+    }
+
+    public void testMatchesHashMapUnderRandomOperations() {
+        Random random = new Random(17);
+        HashMap reference = new HashMap();
+        for(int i = 0; i < 20000; ++i) {
+            String id = Integer.toString(random.nextInt(500));
+            int op = random.nextInt(3);
+            if(op == 0) {
+                index.put(id, i);
+                reference.put(id, new Integer(i));
+            } else if(op == 1) {
+                Integer expected = (Integer)reference.remove(id);
+                assertEquals(expected == null ? -1 : expected.intValue(),
+                             index.remove(id));
+            } else {
+                Integer expected = (Integer)reference.get(id);
+                assertEquals(expected == null ? -1 : expected.intValue(),
+                             index.get(id));
+            }
+            assertEquals(reference.size(), index.size());
+        }
+    }
+}
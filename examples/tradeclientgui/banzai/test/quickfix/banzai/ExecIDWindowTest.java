@@ -0,0 +1,119 @@
+package quickfix.banzai;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import junit.framework.TestCase;
+
+public class ExecIDWindowTest extends TestCase {
+    private final static long DAY = 24L * 60 * 60 * 1000;
+    private final static long NOW = 100 * DAY + 1000;
+
+    private File file;
+
+    public ExecIDWindowTest(String name) {
+        super(name);
+    }
+
+    public void tearDown() {
+        if(file != null)
+            file.delete();
+    }
+
+    public void testDuplicates() {
+        ExecIDWindow window = new ExecIDWindow(16, 0, false);
+        assertTrue(!window.checkAndAdd("E1", NOW));
+        assertTrue(!window.checkAndAdd("E2", NOW));
+        assertTrue(window.checkAndAdd("E1", NOW));
+        assertEquals(2, window.size());
+    }
+
+    public void testOldestEvictedWhenFull() {
+        ExecIDWindow window = new ExecIDWindow(100, 0, false);
+        for(int i = 0; i < 1000; ++i)
+            assertTrue(!window.checkAndAdd("E" + i, NOW));
+        assertEquals(100, window.size());
+        for(int i = 0; i < 900; ++i)
+            assertTrue("E" + i, !window.contains("E" + i, NOW));
+        for(int i = 900; i < 1000; ++i)
+            assertTrue("E" + i, window.contains("E" + i, NOW));
+    }
+
+    public void testMaxAge() {
+        ExecIDWindow window = new ExecIDWindow(16, 1000, false);
+        window.checkAndAdd("E1", NOW);
+        window.checkAndAdd("E2", NOW + 600);
+        assertTrue(window.contains("E1", NOW + 1000));
+        assertTrue(!window.contains("E1", NOW + 1001));
+        assertTrue(window.contains("E2", NOW + 1001));
+        assertEquals(1, window.size());
+    }
+
+    public void testResetOnNewDay() {
+        ExecIDWindow window = new ExecIDWindow(16, 0, true);
+        window.checkAndAdd("E1", NOW);
+        assertTrue(window.contains("E1", NOW + 1000));
+        assertTrue(!window.contains("E1", NOW + DAY));
+        assertEquals(0, window.size());
+    }
+
+    public void testReopenAfterCleanClose() {
+        LongBuffer data = LongBuffer.allocate(ExecIDWindow.length(64));
+        ExecIDWindow window = new ExecIDWindow(64, 0, false, data);
+        for(int i = 0; i < 100; ++i)
+            window.checkAndAdd("E" + i, NOW);
+        window.close();
+
+        window = new ExecIDWindow(64, 0, false, data);
+        assertEquals(64, window.size());
+        assertTrue(!window.contains("E35", NOW));
+        assertTrue(window.contains("E36", NOW));
+        assertTrue(window.contains("E99", NOW));
+    }
+
+    public void testRebuildAfterUncleanShutdown() throws Exception {
+        file = File.createTempFile("banzai", ".execids");
+        LongBuffer data = map(file, ExecIDWindow.length(64));
+        ExecIDWindow window = new ExecIDWindow(64, 0, false, data);
+        for(int i = 0; i < 100; ++i)
+            window.checkAndAdd("E" + i, NOW);
+        // crash: no close, and the hash table half written
+        for(int i = 8; i < 8 + 64; ++i)
+            data.put(i, 0);
+
+        window = new ExecIDWindow(64, 0, false, map(file, ExecIDWindow.length(64)));
+        assertEquals(64, window.size());
+        for(int i = 0; i < 36; ++i)
+            assertTrue("E" + i, !window.contains("E" + i, NOW));
+        for(int i = 36; i < 100; ++i)
+            assertTrue("E" + i, window.contains("E" + i, NOW));
+        assertTrue(window.checkAndAdd("E50", NOW));
+        assertTrue(!window.checkAndAdd("E100", NOW));
+        assertTrue(!window.contains("E36", NOW));
+    }
+
+    public void testStorageOfAnotherCapacityIsReset() {
+        LongBuffer data = LongBuffer.allocate(ExecIDWindow.length(64));
+        ExecIDWindow window = new ExecIDWindow(32, 0, false, data);
+        window.checkAndAdd("E1", NOW);
+        window.close();
+
+        window = new ExecIDWindow(64, 0, false, data);
+        assertEquals(0, window.size());
+        assertTrue(!window.contains("E1", NOW));
+    }
+
+    private static LongBuffer map(File file, int longs) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength((long)longs * 8);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                                        (long)longs * 8)
+                   .order(ByteOrder.nativeOrder()).asLongBuffer();
+        } finally {
+            raf.close();
+        }
+    }
+}
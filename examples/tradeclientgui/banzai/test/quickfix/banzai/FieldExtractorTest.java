@@ -0,0 +1,100 @@
+package quickfix.banzai;
+
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+
+public class FieldExtractorTest extends TestCase {
+    private final static String SOH = "\u0001";
+    private final static int[] TAGS = { 11, 17, 31, 32, 58 };
+
+    private FieldExtractor extractor;
+
+    public FieldExtractorTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        extractor = new FieldExtractor(TAGS, ByteBuffer.allocate(64));
+    }
+
+    private static String message(String[] fields) {
+        StringBuffer text = new StringBuffer();
+        for(int i = 0; i < fields.length; ++i)
+            text.append(fields[i]).append(SOH);
+        return text.toString();
+    }
+
+    public void testExtractsRequestedTags() {
+        assertTrue(extractor.extract(message(new String[] {
+            "8=FIX.4.2", "35=8", "11=ORD1", "17=EXEC1", "31=101.25",
+            "32=-300", "10=000" })));
+        assertEquals("ORD1", extractor.getString(0));
+        assertEquals("EXEC1", extractor.getString(1));
+        assertEquals(101.25, extractor.getDouble(2), 0);
+        assertEquals(-300, extractor.getLong(3));
+        assertTrue(!extractor.isSet(4));
+        assertNull(extractor.getString(4));
+        assertEquals('O', extractor.getChar(0));
+    }
+
+    public void testFirstOccurrenceWins() {
+        assertTrue(extractor.extract(message(new String[] {
+            "11=FIRST", "11=SECOND" })));
+        assertEquals("FIRST", extractor.getString(0));
+    }
+
+    public void testEmptyValue() {
+        assertTrue(extractor.extract(message(new String[] { "58=" })));
+        assertTrue(extractor.isSet(4));
+        assertEquals("", extractor.getString(4));
+        assertEquals(0, extractor.getChar(4));
+    }
+
+    public void testMalformedTagsAreSkipped() {
+        assertTrue(extractor.extract(message(new String[] {
+            "1x1=BAD", "-11=BAD", "=BAD", "99999999999=BAD",
+            "4294967307=BAD", "11=GOOD" })));
+        assertEquals("GOOD", extractor.getString(0));
+        assertTrue(!extractor.isSet(1));
+    }
+
+    public void testTagsPastTheLargestAreSkipped() {
+        assertTrue(extractor.extract(message(new String[] {
+            "5800=BAD", "581=BAD", "58=GOOD" })));
+        assertEquals("GOOD", extractor.getString(4));
+    }
+
+    public void testDataFieldWithEmbeddedSOH() {
+        assertTrue(extractor.extract(message(new String[] {
+            "95=5", "96=ab" + SOH + "cd", "11=ORD1" })));
+        assertEquals("ORD1", extractor.getString(0));
+    }
+
+    public void testTruncatedMessage() {
+        assertTrue(extractor.extract("11=ORD1" + SOH + "17"));
+        assertEquals("ORD1", extractor.getString(0));
+        assertTrue(!extractor.isSet(1));
+    }
+
+    public void testNonAsciiValueFallsBack() {
+        assertTrue(!extractor.extract(message(new String[] {
+            "11=ORD1", "58=caf\u00e9" })));
+        assertTrue(!extractor.isSet(0));
+    }
+
+    public void testBufferTooSmall() {
+        extractor = new FieldExtractor(TAGS, ByteBuffer.allocate(8));
+        assertTrue(!extractor.extract(message(new String[] {
+            "11=ORD1", "58=much too long for the buffer" })));
+        assertTrue(!extractor.isSet(0));
+        assertTrue(extractor.extract(message(new String[] { "11=ORD1" })));
+        assertEquals("ORD1", extractor.getString(0));
+    }
+
+    public void testDoubles() {
+        assertTrue(extractor.extract(message(new String[] {
+            "31=0.000123", "32=12345678901234567890" })));
+        assertEquals(0.000123, extractor.getDouble(2), 1e-15);
+        assertEquals(12345678901234567890.0, extractor.getDouble(3), 1e5);
+    }
+}
@@ -0,0 +1,108 @@
+package quickfix.banzai;
+
+import junit.framework.TestCase;
+import quickfix.SessionID;
+
+public class OrderFilterTest extends TestCase {
+    private OrderTableModel orders;
+    private SessionID first;
+    private SessionID second;
+
+    public OrderFilterTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        orders = new OrderTableModel();
+        first = new SessionID("FIX.4.2", "CLIENT1", "EXECUTOR");
+        second = new SessionID("FIX.4.2", "CLIENT2", "EXECUTOR");
+        // pending, working, filled, canceled and rejected
+        add("1", "IBM", first, 100, 0, 0);
+        add("2", "IBM", second, 100, 40, 60);
+        add("3", "MSFT", first, 100, 0, 100);
+        add("4", "MSFT", second, 100, 0, 0).setCanceled(true);
+        add("5", "IBM", first, 100, 0, 0).setRejected(true);
+    }
+
+    private Order add(String id, String symbol, SessionID sessionID,
+                      int quantity, int open, int executed) {
+        Order order = new Order(id);
+        order.setSymbol(symbol);
+        order.setSessionID(sessionID);
+        order.setQuantity(quantity);
+        order.setOpen(open);
+        order.setExecuted(executed);
+        orders.addOrder(order);
+        return order;
+    }
+
+    // the publish the engine does once it has applied a change
+    private void publish() {
+        for(int row = 0; row < 5; ++row) {
+            Order order = orders.getOrder(row);
+            orders.updateOrder(order, new OrderSnapshot(order));
+        }
+    }
+
+    private void assertRows(OrderFilter filter, boolean[] included) {
+        for(int row = 0; row < included.length; ++row)
+            assertEquals("row " + row, included[row],
+                         filter.include(orders, row));
+    }
+
+    public void testStatuses() {
+        publish();
+        assertEquals(OrderFilter.PENDING,
+                     OrderFilter.getStatus(orders.getSnapshot(0)));
+        assertEquals(OrderFilter.WORKING,
+                     OrderFilter.getStatus(orders.getSnapshot(1)));
+        assertEquals(OrderFilter.FILLED,
+                     OrderFilter.getStatus(orders.getSnapshot(2)));
+        assertEquals(OrderFilter.CANCELED,
+                     OrderFilter.getStatus(orders.getSnapshot(3)));
+        assertEquals(OrderFilter.REJECTED,
+                     OrderFilter.getStatus(orders.getSnapshot(4)));
+    }
+
+    public void testEverything() {
+        publish();
+        assertRows(new OrderFilter(null, null, OrderFilter.ALL),
+                   new boolean[] { true, true, true, true, true });
+    }
+
+    public void testSymbolSessionAndStatus() {
+        publish();
+        assertRows(new OrderFilter("IBM", null, OrderFilter.ALL),
+                   new boolean[] { true, true, false, false, true });
+        assertRows(new OrderFilter(null, second, OrderFilter.ALL),
+                   new boolean[] { false, true, false, true, false });
+        assertRows(new OrderFilter
+                   (null, null, OrderFilter.WORKING | OrderFilter.FILLED),
+                   new boolean[] { false, true, true, false, false });
+        assertRows(new OrderFilter("IBM", first, OrderFilter.PENDING),
+                   new boolean[] { true, false, false, false, false });
+    }
+
+    public void testReadsThePublishedSnapshot() {
+        OrderFilter open = new OrderFilter
+                           (null, null, OrderFilter.PENDING);
+        assertTrue(open.include(orders, 0));
+        // the order being accepted is not seen until it is published
+        orders.getOrder(0).setOpen(100);
+        assertTrue(open.include(orders, 0));
+        publish();
+        assertTrue(!open.include(orders, 0));
+    }
+
+    public void testFiltersAView() {
+        publish();
+        orders.flush();
+        BlotterView view = new BlotterView(orders);
+        view.setFilter(new OrderFilter("MSFT", null, OrderFilter.ALL));
+        assertEquals(2, view.getRowCount());
+        assertEquals(2, view.getModelRow(0));
+        assertEquals(3, view.getModelRow(1));
+        view.setFilter(null);
+        assertEquals(5, view.getRowCount());
+    }
+}
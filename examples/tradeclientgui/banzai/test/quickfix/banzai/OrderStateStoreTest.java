@@ -0,0 +1,113 @@
+package quickfix.banzai;
+
+import java.io.File;
+import java.util.List;
+import junit.framework.TestCase;
+import quickfix.SessionID;
+
+public class OrderStateStoreTest extends TestCase {
+    private final static long DAY = 20000;
+    private File file;
+
+    public OrderStateStoreTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("store", ".state");
+        file.deleteOnExit();
+    }
+
+    public void tearDown() {
+        file.delete();
+    }
+
+    private Order order(String id, OrderTIF tif, int executed,
+                        boolean canceled) {
+        Order order = new Order(id);
+        order.setSymbol("IBM");
+        order.setSessionID(new SessionID("FIX.4.2", "CLIENT1", "EXECUTOR"));
+        order.setSide(OrderSide.BUY);
+        order.setType(OrderType.LIMIT);
+        order.setTIF(tif);
+        order.setQuantity(100);
+        order.setOpen(100 - executed);
+        order.setExecuted(executed);
+        order.setLimit(new Double(10.5));
+        order.setCanceled(canceled);
+        return order;
+    }
+
+    // B, D and F are still open and outlive the day
+    private void fill() throws Exception {
+        file.delete();
+        OrderStateStore store = new OrderStateStore
+                                (file, 16, DAY, Integer.MAX_VALUE);
+        store.allocate(order("A", OrderTIF.DAY, 0, false));
+        store.allocate(order("B", OrderTIF.GTC, 0, false));
+        store.allocate(order("C", OrderTIF.GTC, 0, true));
+        store.allocate(order("D", OrderTIF.GTC, 40, false));
+        store.allocate(order("E", OrderTIF.DAY, 100, false));
+        store.allocate(order("F", OrderTIF.IOC, 0, false));
+        store.remove(store.allocate(order("G", OrderTIF.GTC, 0, false)));
+        assertEquals(7, store.size());
+    }
+
+    private void assertCarriedOver(OrderStateStore store) {
+        List orders = store.recover();
+        String[] ids = { "B", "D", "F" };
+        int[] executed = { 0, 40, 0 };
+        assertEquals(ids.length, orders.size());
+        assertEquals(ids.length, store.size());
+        for(int i = 0; i < ids.length; ++i) {
+            Order order = (Order)orders.get(i);
+            assertEquals(ids[i], order.getID());
+            assertEquals("IBM", order.getSymbol());
+            assertNotNull(order.getSessionID());
+            assertEquals(100, order.getQuantity());
+            assertEquals(executed[i], order.getExecuted());
+            assertEquals(100 - executed[i], order.getOpen());
+            assertEquals(new Double(10.5), order.getLimit());
+            assertTrue(order.getTIF() != OrderTIF.DAY);
+        }
+    }
+
+    public void testKeepsOpenOrdersOnNewDay() throws Exception {
+        fill();
+        OrderStateStore store = new OrderStateStore
+                                (file, 16, DAY + 1, Integer.MAX_VALUE);
+        assertCarriedOver(store);
+        store = new OrderStateStore(file, 16, DAY + 2, Integer.MAX_VALUE);
+        assertCarriedOver(store);
+    }
+
+    public void testSameDayKeepsEverything() throws Exception {
+        fill();
+        OrderStateStore store = new OrderStateStore
+                                (file, 16, DAY, Integer.MAX_VALUE);
+        assertEquals(7, store.size());
+        assertEquals(6, store.recover().size());
+    }
+
+    public void testFinishesCompactionStoppedPartway() throws Exception {
+        // three moves of fourteen writes each, then the count
+        for(int steps = 0; steps <= 3 * 14 + 1; ++steps) {
+            fill();
+            new OrderStateStore(file, 16, DAY + 1, steps);
+            OrderStateStore store = new OrderStateStore
+                                    (file, 16, DAY + 1, Integer.MAX_VALUE);
+            assertCarriedOver(store);
+        }
+    }
+
+    public void testSurvivesStoppingTwice() throws Exception {
+        for(int steps = 0; steps < 3 * 14; steps += 5) {
+            fill();
+            new OrderStateStore(file, 16, DAY + 1, steps);
+            new OrderStateStore(file, 16, DAY + 1, 7);
+            OrderStateStore store = new OrderStateStore
+                                    (file, 16, DAY + 1, Integer.MAX_VALUE);
+            assertCarriedOver(store);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class OrderStatisticTreeTest extends TestCase {
+    private int[] keys = new int[512];
+    private OrderStatisticTree tree;
+    private ArrayList reference = new ArrayList();
+
+    public OrderStatisticTreeTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        tree = new OrderStatisticTree(new OrderStatisticTree.RowComparator() {
+            public int compare(int a, int b) {
+                return compareRows(a, b);
+            }
+        });
+    }
+
+    // by key, ties by row
+    private int compareRows(int a, int b) {
+        if(keys[a] != keys[b])
+            return keys[a] < keys[b] ? -1 : 1;
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private void insert(int row) {
+        tree.insert(row);
+        Integer value = new Integer(row);
+        if(!reference.contains(value)) {
+            reference.add(value);
+            Collections.sort(reference, new Comparator() {
+                public int compare(Object a, Object b) {
+                    return compareRows(((Integer)a).intValue(),
+                                       ((Integer)b).intValue());
+                }
+            });
+        }
+    }
+
+    private void remove(int row) {
+        tree.remove(row);
+        reference.remove(new Integer(row));
+    }
+
+    private void check() {
+        assertEquals(reference.size(), tree.size());
+        for(int i = 0; i < reference.size(); ++i) {
+            int row = ((Integer)reference.get(i)).intValue();
+            assertEquals(row, tree.select(i));
+            assertEquals(i, tree.rank(row));
+            assertTrue(tree.contains(row));
+        }
+        assertEquals(-1, tree.select(reference.size()));
+    }
+
+    public void testEmpty() {
+        assertEquals(0, tree.size());
+        assertEquals(-1, tree.select(0));
+        assertEquals(-1, tree.rank(3));
+        assertTrue(!tree.contains(3));
+    }
+
+    public void testOrdersByKeyThenRow() {
+        keys[0] = 5;
+        keys[1] = 1;
+        keys[2] = 5;
+        keys[3] = 3;
+        for(int row = 0; row < 4; ++row)
+            insert(row);
+        check();
+        assertEquals(1, tree.select(0));
+        assertEquals(3, tree.select(1));
+        assertEquals(0, tree.select(2));
+        assertEquals(2, tree.select(3));
+    }
+
+    public void testInsertTwiceAndRemoveAbsent() {
+        insert(7);
+        insert(7);
+        remove(9);
+        check();
+        remove(7);
+        assertTrue(!tree.contains(7));
+        assertEquals(-1, tree.rank(7));
+        check();
+    }
+
+    public void testClear() {
+        for(int row = 0; row < 50; ++row)
+            insert(row);
+        tree.clear();
+        reference.clear();
+        check();
+        insert(10);
+        check();
+    }
+
+    public void testMatchesSortedListUnderRandomOperations() {
+        Random random = new Random(11);
+        for(int i = 0; i < keys.length; ++i)
+            keys[i] = random.nextInt(64);
+        for(int i = 0; i < 5000; ++i) {
+            int row = random.nextInt(keys.length);
+            if(random.nextInt(3) == 0) {
+                remove(row);
+            } else if(tree.contains(row) && random.nextBoolean()) {
+                // a key only changes while its row is out of the tree
+                remove(row);
+                keys[row] = random.nextInt(64);
+                insert(row);
+            } else {
+                insert(row);
+            }
+            if(i % 50 == 0)
+                check();
+        }
+        check();
+    }
+}
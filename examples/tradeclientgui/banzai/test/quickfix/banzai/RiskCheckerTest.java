@@ -0,0 +1,177 @@
+package quickfix.banzai;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import quickfix.SessionSettings;
+
+public class RiskCheckerTest extends TestCase {
+    public RiskCheckerTest(String name) {
+        super(name);
+    }
+
+    private static RiskChecker checker(String limits) throws Exception {
+        return new RiskChecker(new SessionSettings
+                               (new ByteArrayInputStream
+                                (("[DEFAULT]\n" + limits).getBytes())));
+    }
+
+    private static Order order(String symbol, OrderSide side, int quantity) {
+        Order order = new Order("ID");
+        order.setSymbol(symbol);
+        order.setSide(side);
+        order.setQuantity(quantity);
+        order.setOpen(quantity);
+        return order;
+    }
+
+    public void testOrderQuantityLimit() throws Exception {
+        RiskChecker risk = checker("MaxOrderQty=100\n");
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 100)));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 101)));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 0)));
+    }
+
+    public void testOpenOrderLimitIsGivenBackOnRelease() throws Exception {
+        RiskChecker risk = checker("MaxOpenOrders=2\n");
+        Order first = order("IBM", OrderSide.BUY, 10);
+        assertNull(risk.checkNew(first));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 10)));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 10)));
+        assertEquals(2, risk.getOpenOrders("IBM"));
+        assertNull(risk.checkNew(order("MSFT", OrderSide.BUY, 10)));
+
+        risk.release(first);
+        risk.release(first);
+        assertEquals(1, risk.getOpenOrders("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 10)));
+    }
+
+    public void testPositionLimitRollsBackRefusedOrder() throws Exception {
+        RiskChecker risk = checker("MaxPosition=1000\n");
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 600)));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 600)));
+        assertEquals(1, risk.getOpenOrders("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 400)));
+        // sells are reserved apart from buys
+        assertNull(risk.checkNew(order("IBM", OrderSide.SELL, 1000)));
+    }
+
+    public void testFillsMoveOpenQuantityToPosition() throws Exception {
+        RiskChecker risk = checker("MaxPosition=1000\n");
+        Order order = order("IBM", OrderSide.BUY, 800);
+        assertNull(risk.checkNew(order));
+
+        order.setExecuted(300);
+        order.setOpen(500);
+        risk.orderUpdated(order, 300, 50);
+        assertEquals(300, risk.getPosition("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 200)));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 1)));
+
+        order.setExecuted(800);
+        order.setOpen(0);
+        risk.orderUpdated(order, 500, 50);
+        assertEquals(800, risk.getPosition("IBM"));
+        assertEquals(1, risk.getOpenOrders("IBM"));
+    }
+
+    public void testCanceledOrderGivesBackItsReservation() throws Exception {
+        RiskChecker risk = checker("MaxPosition=1000\n");
+        Order order = order("IBM", OrderSide.BUY, 1000);
+        assertNull(risk.checkNew(order));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 1)));
+        order.setCanceled(true);
+        risk.orderUpdated(order, 0, Double.NaN);
+        assertEquals(0, risk.getOpenOrders("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 1000)));
+    }
+
+    public void testPriceBandFollowsLastFill() throws Exception {
+        RiskChecker risk = checker("PriceBandPercent=10\n");
+        Order filled = order("IBM", OrderSide.BUY, 10);
+        assertNull(risk.checkNew(filled));
+        filled.setExecuted(10);
+        filled.setOpen(0);
+        risk.orderUpdated(filled, 10, 100);
+
+        Order inside = order("IBM", OrderSide.BUY, 10);
+        inside.setType(OrderType.LIMIT);
+        inside.setLimit("109");
+        assertNull(risk.checkNew(inside));
+        Order outside = order("IBM", OrderSide.BUY, 10);
+        outside.setType(OrderType.LIMIT);
+        outside.setLimit("111");
+        assertNotNull(risk.checkNew(outside));
+    }
+
+    public void testRecoveredOrdersAreReserved() throws Exception {
+        RiskChecker risk = checker("MaxPosition=1000\n");
+        Order order = order("IBM", OrderSide.BUY, 1000);
+        order.setExecuted(400);
+        order.setOpen(600);
+        risk.recover(order);
+        assertEquals(400, risk.getPosition("IBM"));
+        assertEquals(1, risk.getOpenOrders("IBM"));
+        assertNotNull(risk.checkNew(order("IBM", OrderSide.BUY, 1)));
+        risk.release(order);
+        assertEquals(0, risk.getOpenOrders("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 600)));
+    }
+
+    public void testConcurrentReservationsNeverOvershoot() throws Exception {
+        final RiskChecker risk = checker("MaxPosition=1000\n");
+        final List accepted = new ArrayList();
+        Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for(int j = 0; j < 100; ++j) {
+                        Order order = order("IBM", OrderSide.BUY, 10);
+                        if(risk.checkNew(order) == null) {
+                            synchronized(accepted) {
+                                accepted.add(order);
+                            }
+                        }
+                    }
+                }
+            };
+        }
+        for(int i = 0; i < threads.length; ++i)
+            threads[i].start();
+        for(int i = 0; i < threads.length; ++i)
+            threads[i].join();
+
+        assertEquals(100, accepted.size());
+        assertEquals(100, risk.getOpenOrders("IBM"));
+        for(int i = 0; i < accepted.size(); ++i)
+            risk.release((Order)accepted.get(i));
+        assertEquals(0, risk.getOpenOrders("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.BUY, 1000)));
+    }
+
+    public void testConcurrentReserveAndReleaseBalance() throws Exception {
+        final RiskChecker risk = checker("MaxPosition=50\nMaxOpenOrders=3\n");
+        Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for(int j = 0; j < 10000; ++j) {
+                        Order order = order("IBM", OrderSide.SELL, 20);
+                        if(risk.checkNew(order) == null)
+                            risk.release(order);
+                    }
+                }
+            };
+        }
+        for(int i = 0; i < threads.length; ++i)
+            threads[i].start();
+        for(int i = 0; i < threads.length; ++i)
+            threads[i].join();
+
+        assertEquals(0, risk.getOpenOrders("IBM"));
+        assertEquals(0, risk.getPosition("IBM"));
+        assertNull(risk.checkNew(order("IBM", OrderSide.SELL, 50)));
+    }
+}
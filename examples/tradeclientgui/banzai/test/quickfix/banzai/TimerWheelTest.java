@@ -0,0 +1,142 @@
+package quickfix.banzai;
+
+import java.util.ArrayList;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class TimerWheelTest extends TestCase {
+    private TimerWheel wheel;
+    private long now;
+
+    public TimerWheelTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        // never started; the test moves the clock with tick
+        wheel = new TimerWheel(1);
+        now = 0;
+    }
+
+    private class Task implements Runnable {
+        long ranAt = -1;
+        int runs = 0;
+
+        public void run() {
+            ranAt = now;
+            runs++;
+        }
+    }
+
+    private void tick(long ticks) {
+        for(long i = 0; i < ticks; ++i) {
+            now++;
+            ArrayList due = wheel.tick();
+            for(int j = 0; j < due.size(); ++j)
+                ((Runnable)due.get(j)).run();
+        }
+    }
+
+    public void testRunsOnceAtDeadline() {
+        Task task = new Task();
+        wheel.schedule(task, 5);
+        tick(4);
+        assertEquals(0, task.runs);
+        tick(1);
+        assertEquals(1, task.runs);
+        assertEquals(5, task.ranAt);
+        tick(200);
+        assertEquals(1, task.runs);
+        assertEquals(0, wheel.size());
+    }
+
+    public void testZeroDelayRunsOnNextTick() {
+        Task task = new Task();
+        wheel.schedule(task, 0);
+        tick(1);
+        assertEquals(1, task.ranAt);
+    }
+
+    public void testCascadesThroughCoarserWheels() {
+        long[] delays = { 63, 64, 65, 4095, 4096, 4097, 262143, 262144,
+                          300000 };
+        Task[] tasks = new Task[delays.length];
+        for(int i = 0; i < delays.length; ++i) {
+            tasks[i] = new Task();
+            wheel.schedule(tasks[i], delays[i]);
+        }
+        tick(300000);
+        for(int i = 0; i < delays.length; ++i)
+            assertEquals("delay " + delays[i], delays[i], tasks[i].ranAt);
+    }
+
+    public void testBeyondTheWheelsReach() {
+        Task task = new Task();
+        long delay = (1L << 24) + 1000;
+        wheel.schedule(task, delay);
+        tick(delay - 1);
+        assertEquals(0, task.runs);
+        tick(1);
+        assertEquals(delay, task.ranAt);
+    }
+
+    public void testCancel() {
+        Task task = new Task();
+        TimerWheel.Timeout timeout = wheel.schedule(task, 100);
+        assertEquals(1, wheel.size());
+        assertTrue(timeout.cancel());
+        assertTrue(!timeout.cancel());
+        assertEquals(0, wheel.size());
+        tick(200);
+        assertEquals(0, task.runs);
+    }
+
+    public void testCancelAfterRunFails() {
+        Task task = new Task();
+        TimerWheel.Timeout timeout = wheel.schedule(task, 3);
+        tick(3);
+        assertTrue(!timeout.cancel());
+    }
+
+    public void testCancelKeepsNeighboursInSlot() {
+        Task first = new Task();
+        Task second = new Task();
+        Task third = new Task();
+        wheel.schedule(first, 10);
+        TimerWheel.Timeout middle = wheel.schedule(second, 10);
+        wheel.schedule(third, 10);
+        middle.cancel();
+        tick(10);
+        assertEquals(1, first.runs);
+        assertEquals(0, second.runs);
+        assertEquals(1, third.runs);
+    }
+
+    public void testScheduledAfterClockHasMoved() {
+        tick(1000);
+        Task task = new Task();
+        wheel.schedule(task, 5000);
+        tick(5000);
+        assertEquals(6000, task.ranAt);
+    }
+
+    public void testRandomDeadlines() {
+        Random random = new Random(5);
+        Task[] tasks = new Task[2000];
+        long[] deadlines = new long[tasks.length];
+        for(int i = 0; i < tasks.length; ++i) {
+            if(i % 4 == 0)
+                tick(random.nextInt(50));
+            long delay = 1 + random.nextInt(1 << random.nextInt(17));
+            tasks[i] = new Task();
+            deadlines[i] = now + delay;
+            wheel.schedule(tasks[i], delay);
+        }
+        tick(1 << 17);
+        for(int i = 0; i < tasks.length; ++i) {
+            assertEquals(1, tasks[i].runs);
+            assertEquals(deadlines[i], tasks[i].ranAt);
+        }
+        assertEquals(0, wheel.size());
+    }
+}